@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+
+/**
+ * The first posts of a user's feed computed ahead by {@code generate_feed_all}, which later feed reads return
+ * while nothing the feed depends on has changed.
+ *
+ * A feed depends on the users the user follows, the posts it has seen, its materialized feed in push and hybrid
+ * feed modes, and the ranked posts of the users whose posts are pulled. The first three are checked against the
+ * counters of the user, and the ranked posts against the version of the {@link Snapshots} clock the feed was
+ * computed at: a tree published after it means a new post or a changed like.
+ */
+public final class CachedFeed {
+    private final ArrayList<PostVersion> posts;
+    private final int num; // the number of posts asked for, more than posts.size() if the feed ran out
+    private final long version;
+    private final int followingVersion;
+    private final int seenCount;
+    private final int feedChanges;
+
+    /**
+     * Records a computed feed with the state of the user it was computed from.
+     *
+     * @param user The user of the feed.
+     * @param posts The first posts of the feed.
+     * @param num The number of posts asked for.
+     * @param version The version of the ranked posts the feed was computed from.
+     */
+    CachedFeed(User user, ArrayList<PostVersion> posts, int num, long version) {
+        this.posts = posts;
+        this.num = num;
+        this.version = version;
+        this.followingVersion = user.followingVersion;
+        this.seenCount = user.seenPosts.size();
+        this.feedChanges = user.feed.changes();
+    }
+
+    /**
+     * Returns the first posts of the feed, if the cached feed has enough of them and is still current.
+     * The caller must hold the lock of the user.
+     *
+     * @param user The user of the feed.
+     * @param num The number of posts needed.
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @param readVersion The version pinned by the reader, not older than the cached feed.
+     * @return At most num posts, or null if the feed must be computed again.
+     */
+    ArrayList<PostVersion> first(User user, int num, MySymbolTable<User> users, FollowGraph graph, long readVersion) {
+        if (num > this.num && posts.size() == this.num) {
+            return null; // the feed may have more posts than were computed
+        }
+        if (user.followingVersion != followingVersion || user.seenPosts.size() != seenCount
+                || user.feed.changes() != feedChanges || !pulledPostsUnchanged(user, users, graph, readVersion)) {
+            return null;
+        }
+        return new ArrayList<>(posts.subList(0, Math.min(num, posts.size())));
+    }
+
+    // Checks that none of the users whose posts the feed pulls published a tree after the feed was computed
+    private boolean pulledPostsUnchanged(User user, MySymbolTable<User> users, FollowGraph graph, long readVersion) {
+        MyIntHashSet.IntIterator it;
+        if (Settings.feedMode == Settings.FeedMode.PUSH) {
+            return true;
+        } else if (Settings.feedMode == Settings.FeedMode.HYBRID) {
+            it = user.followedCelebrities.iterator();
+        } else {
+            FollowGraph.Row row = graph.following(user);
+            if (row != null) {
+                for (int i = row.start; i < row.end; i++) {
+                    if (users.get(row.neighbors[i]).rankedPosts.at(readVersion).version > version) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            it = user.following.iterator();
+        }
+        while (it.hasNext()) {
+            if (users.get(it.next()).rankedPosts.at(readVersion).version > version) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the text commands of an input file sent over a local socket, so a long-running network serves many
+ * batches without starting a JVM and rebuilding its state for each one. Enabled with {@code --serve=<port>}
+ * for a TCP socket on the loopback address, or {@code --serve=unix:<path>} for a Unix-domain socket.
+ *
+ * Every connection gets its own thread, a virtual thread when the JVM has them. A client may send any number of
+ * command lines without waiting for their results, and the commands of a connection run in the order they were
+ * sent. Every complete line that has arrived is run before the log lines are written back, so a pipelined batch
+ * is answered with a few large writes. The log lines are the same as in the output file of a batch run,
+ * so sending an input file and closing the sending side returns the output file.
+ *
+ * All connections share one {@link SocialNetwork}, which is safe for concurrent callers.
+ */
+public class CommandServer {
+    private static final int READ_SIZE = 1 << 16;
+    // Thread.ofVirtual().unstarted(task) on JVMs that have virtual threads, found once
+    private static final Method OF_VIRTUAL;
+    private static final Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            ofVirtual.invoke(null); // fails when virtual threads are a preview feature that is not enabled
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+    }
+
+    private final SocialNetwork network;
+
+    /**
+     * Constructs a server.
+     *
+     * @param network The social network that runs the commands of all connections.
+     */
+    public CommandServer(SocialNetwork network) {
+        this.network = network;
+    }
+
+    /**
+     * Accepts connections until the process is stopped.
+     *
+     * @param address The port number of a loopback TCP socket, or "unix:" followed by the path of a Unix-domain socket.
+     * @throws IOException If the socket can not be opened.
+     */
+    public void serve(String address) throws IOException {
+        ServerSocketChannel server;
+        if (address.startsWith("unix:")) {
+            Path path = Path.of(address.substring("unix:".length()));
+            // a socket file left by an earlier server would make the bind fail
+            Files.deleteIfExists(path);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteSocketFile(path)));
+        } else {
+            SocketAddress socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+            server = ServerSocketChannel.open();
+            server.bind(socketAddress);
+        }
+        System.err.println("Serving commands on " + server.getLocalAddress()
+                + (OF_VIRTUAL != null ? " with virtual threads" : " with platform threads"));
+        try (ServerSocketChannel channel = server) {
+            while (true) {
+                SocketChannel client = channel.accept();
+                newThread(() -> handle(client)).start();
+            }
+        }
+    }
+
+    // Runs the commands of one connection until the client closes its sending side
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            MyLogWriter out = new MyLogWriter(channel);
+            ByteBuffer input = ByteBuffer.allocate(READ_SIZE);
+            while (true) {
+                boolean ended = channel.read(input) < 0;
+                input.flip();
+                int end = ended ? input.limit() : completeLinesEnd(input);
+                if (end > 0) {
+                    MyCommandParser parser = new MyCommandParser(input.duplicate().limit(end));
+                    while (parser.next()) {
+                        InputOutputOperations.execute(parser, network, out);
+                    }
+                    input.position(end);
+                }
+                // the results are written once every line that has arrived is run
+                out.flush();
+                if (ended) {
+                    return;
+                }
+                input.compact();
+                if (!input.hasRemaining()) {
+                    // a line longer than the buffer
+                    input = ByteBuffer.allocate(input.capacity() * 2).put(input.flip());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Connection closed: " + e);
+        } finally {
+            // every commit walks the slots of the threads that read snapshots, so the ended ones are dropped
+            Snapshots.release();
+        }
+    }
+
+    // Returns the index after the last line terminator of the received bytes, or 0 if no line is complete.
+    // A "\r" at the very end may be the first half of "\r\n", so its line waits for the next read
+    private static int completeLinesEnd(ByteBuffer input) {
+        for (int i = input.limit() - 1; i >= 0; i--) {
+            byte b = input.get(i);
+            if (b == '\n' || (b == '\r' && i < input.limit() - 1)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static Thread newThread(Runnable task) {
+        if (OF_VIRTUAL != null) {
+            try {
+                return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+            } catch (ReflectiveOperationException e) {
+                // fall back to a platform thread
+            }
+        }
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void deleteSocketFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the file is left behind, the next server deletes it
+        }
+    }
+}
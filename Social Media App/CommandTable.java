@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The actions that can appear in the input, and the lookup from the bytes of an action keyword to its opcode.
+ *
+ * The keywords are kept in a small open-addressing table indexed by a hash of their bytes,
+ * so resolving an action costs one hash and one byte comparison instead of a chain of string comparisons.
+ */
+public class CommandTable {
+    static final int INVALID = -1;
+    static final int CREATE_USER = 0;
+    static final int FOLLOW_USER = 1;
+    static final int UNFOLLOW_USER = 2;
+    static final int CREATE_POST = 3;
+    static final int TOGGLE_LIKE = 4;
+    static final int SEE_POST = 5;
+    static final int SEE_ALL_POSTS_FROM_USER = 6;
+    static final int GENERATE_FEED = 7;
+    static final int SCROLL_THROUGH_FEED = 8;
+    static final int SORT_POSTS = 9;
+    static final int SAVE_SNAPSHOT = 10;
+    static final int LOAD_SNAPSHOT = 11;
+    static final int GENERATE_FEED_ALL = 12;
+    static final int RECOMMEND_FOLLOWS = 13;
+
+    // the keyword of every opcode, in the order of the opcodes
+    static final String[] NAMES = {
+            "create_user", "follow_user", "unfollow_user", "create_post", "toggle_like", "see_post",
+            "see_all_posts_from_user", "generate_feed", "scroll_through_feed", "sort_posts",
+            "save_snapshot", "load_snapshot", "generate_feed_all", "recommend_follows"
+    };
+
+    private static final int TABLE_SIZE = 64; // a power of two, more than twice the number of keywords
+    private static final byte[][] KEYWORDS = new byte[NAMES.length][];
+    private static final int[] slots = new int[TABLE_SIZE]; // opcode + 1 of the keyword in each slot, 0 if empty
+
+    static {
+        for (int opcode = 0; opcode < NAMES.length; opcode++) {
+            KEYWORDS[opcode] = NAMES[opcode].getBytes(StandardCharsets.US_ASCII);
+            int slot = hash(KEYWORDS[opcode], 0, KEYWORDS[opcode].length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            slots[slot] = opcode + 1;
+        }
+    }
+
+    /**
+     * Resolves an action keyword to its opcode.
+     *
+     * @param buffer The buffer that holds the keyword.
+     * @param start The index of the first byte of the keyword.
+     * @param end The index after the last byte of the keyword.
+     * @return The opcode, or {@link #INVALID} if the keyword is not known.
+     */
+    public static int lookup(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        int slot = hash(buffer, start, end);
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            byte[] keyword = KEYWORDS[entry - 1];
+            if (keyword.length == length && matches(buffer, start, keyword)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return INVALID;
+    }
+
+    // Returns the name used for an opcode in logs and statistics
+    public static String name(int opcode) {
+        return opcode == INVALID ? "invalid" : NAMES[opcode];
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, byte[] keyword) {
+        for (int i = 0; i < keyword.length; i++) {
+            if (buffer.get(start + i) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The length and the first and the last two bytes tell all keywords apart, so only they are hashed
+    private static int hash(byte[] bytes, int start, int end) {
+        return mix(end - start, bytes[start], bytes[end - 2], bytes[end - 1]);
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        if (end - start < 2) {
+            return mix(end - start, 0, 0, 0);
+        }
+        return mix(end - start, buffer.get(start), buffer.get(end - 2), buffer.get(end - 1));
+    }
+
+    private static int mix(int length, int first, int secondLast, int last) {
+        int h = length * 31 * 31 * 31 + first * 31 * 31 + secondLast * 31 + last;
+        h *= 0x9E3779B9;
+        return (h >>> 26) & (TABLE_SIZE - 1);
+    }
+}
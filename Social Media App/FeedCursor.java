@@ -0,0 +1,69 @@
+import java.util.Iterator;
+
+/**
+ * Remembers how far a user has scrolled through the posts of each user it follows, so a scroll does not pass
+ * again over the posts that earlier scrolls already showed.
+ *
+ * For every followed author the cursor keeps a post of the author, such that every post ranked above it has been
+ * seen by the user. Seen posts stay seen, so the position only goes stale when an unseen post of the author moves
+ * above it: when the author creates a post or the likes of one of its posts change. Both change the posts version
+ * of the author's {@link RankedPosts}, and a position saved with another version is not used, also by a reader
+ * whose snapshot is older than the position. Relabeling post IDs keeps the order of the posts, so it does not
+ * affect the positions.
+ *
+ * A position belongs to the author and not to the feed, so it stays valid when the user follows or unfollows
+ * someone else. The position of an unfollowed author is dropped.
+ */
+public class FeedCursor {
+
+    // A saved position in the ranked posts of one author, with the likes of the post at that time
+    private static class Position {
+        Post post;
+        int likes;
+        int version;
+    }
+
+    private MyIntHashMap<Position> positions; // created by the first save
+
+    /**
+     * Opens the ranked posts of an author where the user stopped scrolling.
+     *
+     * @param author The followed user.
+     * @param posts The snapshot of the author's ranked posts that is read.
+     * @return An iterator over the posts below the saved position, or null if there is no valid position.
+     */
+    public Iterator<PostVersion> resume(User author, RankedPosts.Snapshot posts) {
+        Position position = positions == null ? null : positions.get(author.index);
+        if (position == null || position.version != posts.postsVersion) {
+            return null;
+        }
+        return posts.iteratorBelow(position.post, position.likes);
+    }
+
+    /**
+     * Saves the position of the user in the posts of an author.
+     *
+     * @param author The followed user.
+     * @param post A post of the author, every post ranked above it must have been seen by the user.
+     */
+    public void save(User author, Post post) {
+        if (positions == null) {
+            positions = new MyIntHashMap<>();
+        }
+        Position position = positions.get(author.index);
+        if (position == null) {
+            position = new Position();
+            positions.put(author.index, position);
+        }
+        position.post = post;
+        position.likes = post.likes;
+        position.version = author.rankedPosts.postsVersion();
+    }
+
+    // Drops the position in the posts of an author
+    public void discard(User author) {
+        if (positions != null) {
+            positions.remove(author.index);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Lazily merges like-ordered streams of posts into the feed of a user.
+ *
+ * Each followed user keeps its posts in a {@link RankedPosts} tree ordered by likes, so the feed can be produced
+ * with a k-way merge: a max-heap holds the sort key of the best unseen post of every stream, and each call to
+ * {@link #next()} takes the best head and advances only that stream. The heap compares primitive keys,
+ * so no post or stream is followed while sifting.
+ * The cost of reading K posts depends on K and the number of streams, not on the total number of posts.
+ * The posts of the followed users are read from the snapshots given by the caller, and are returned with the likes
+ * of those snapshots.
+ *
+ * The stream of a followed user starts where the user's {@link FeedCursor} stopped when it can, so the posts shown
+ * by earlier scrolls are not passed over again. After a scroll has marked the posts it took as seen,
+ * {@link #saveCursors()} moves the cursor past them.
+ *
+ * Posts must not be re-ranked while a merge is in progress, so callers should collect the posts they need
+ * before liking any of them.
+ */
+public class FeedMerger {
+
+    // A stream over the unseen posts of one followed user
+    private static class Stream {
+        Iterator<PostVersion> iterator;
+        PostVersion head;
+        // for the streams of followed users: the author, whether the stream started at the cursor,
+        // and the last post taken or passed over, with its likes at that time
+        User author;
+        boolean resumed;
+        PostVersion last;
+
+        Stream(Iterator<PostVersion> iterator) {
+            this.iterator = iterator;
+        }
+    }
+
+    private final User user;
+    // the heap holds the sort key of the head of every stream that is not finished, with the index of the stream
+    private final MyLongMaxHeap heap;
+    private final ArrayList<Stream> streams = new ArrayList<>();
+    private final ArrayList<Stream> authorStreams = new ArrayList<>();
+
+    /**
+     * Creates an empty merger for the feed of a user.
+     *
+     * @param user The user for whom the feed is being generated.
+     */
+    public FeedMerger(User user) {
+        this.user = user;
+        this.heap = new MyLongMaxHeap(16);
+    }
+
+    /**
+     * Adds a stream of posts to the merge, with their current likes.
+     *
+     * @param posts The posts, ordered by likes (descending) and then lexicographically by post ID.
+     */
+    public void addPosts(Iterable<Post> posts) {
+        Iterator<Post> iterator = posts.iterator();
+        start(new Stream(new Iterator<PostVersion>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public PostVersion next() {
+                return PostVersion.of(iterator.next());
+            }
+        }));
+    }
+
+    /**
+     * Adds the ranked posts of a followed user to the merge, starting from the user's cursor if it is valid.
+     *
+     * @param author The followed user.
+     * @param posts The snapshot of the author's ranked posts to read.
+     */
+    public void addAuthor(User author, RankedPosts.Snapshot posts) {
+        Iterator<PostVersion> iterator = user.feedCursor.resume(author, posts);
+        Stream stream = new Stream(iterator != null ? iterator : posts.iterator());
+        stream.author = author;
+        stream.resumed = iterator != null;
+        authorStreams.add(stream);
+        start(stream);
+    }
+
+    /**
+     * Returns the next post of the feed, sorted by likes (descending) and then lexicographically by post ID.
+     *
+     * @return The next unseen post with its likes, or null if there are no more posts.
+     */
+    public PostVersion next() {
+        if (heap.isEmpty()) {
+            return null;
+        }
+        int index = heap.maxValue();
+        Stream stream = streams.get(index);
+        PostVersion post = stream.head;
+        stream.last = post;
+        if (advance(stream)) {
+            heap.replaceMax(stream.head.sortKey(), index);
+        } else {
+            heap.removeMax();
+        }
+        return post;
+    }
+
+    /**
+     * Moves the user's cursor past the posts taken from the followed users, which must all be seen by now.
+     *
+     * A post that lost likes after it was taken may have fallen below unseen posts, so its stream is not saved.
+     */
+    public void saveCursors() {
+        for (Stream stream : authorStreams) {
+            if (stream.last != null && stream.last.post.likes >= stream.last.likes) {
+                user.feedCursor.save(stream.author, stream.last.post);
+            } else if (stream.last != null || !stream.resumed) {
+                // a stream that started from the top had a stale position
+                user.feedCursor.discard(stream.author);
+            }
+        }
+    }
+
+    // Puts a new stream into the merge if it has an unseen post
+    private void start(Stream stream) {
+        if (advance(stream)) {
+            heap.insert(stream.head.sortKey(), streams.size());
+            streams.add(stream);
+        }
+    }
+
+    // Moves the stream to its next post that the user has not seen yet, returns false if there is none
+    private boolean advance(Stream stream) {
+        while (stream.iterator.hasNext()) {
+            PostVersion post = stream.iterator.next();
+            Metrics.add(Metrics.PULLED, 1);
+            if (!user.seenPosts.contains(post.post.index)) {
+                stream.head = post;
+                return true;
+            }
+            stream.last = post;
+        }
+        stream.head = null;
+        return false;
+    }
+}
@@ -1,129 +1,215 @@
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class FeedOperations {
 
     /**
      * Generates a feed of posts for a user.
      *
-     * @param params A string containing the user ID and the number of posts to display, separated by a space.
-     * @param users A hashmap containing all users in the network.
+     * @param userId The ID of the user whose feed is generated.
+     * @param num The number of posts to display.
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @param version The snapshot version of the posts of the followed users, see {@link Snapshots}.
+     * @return At most num posts with their likes, or null if the user does not exist.
      *
      * Generates a feed consisting of posts from users the user follows that have not been seen yet.
      * The feed is sorted by likes (descending) and then lexicographically by post ID.
-     * Displays up to the requested number of posts and logs a message if no more posts are available.
+     * If fewer posts are returned than requested, there are no more posts available for the user.
      */
-    public static void generateFeed(String params, MyHashMap<String, User> users) {
-        String[] parts = params.split(" ");
-        String userId = parts[0];
-        int num = Integer.parseInt(parts[1]);
-
-        // if the user does not exist in the network, log an error
+    public static ArrayList<PostVersion> generateFeed(String userId, int num, MySymbolTable<User> users, FollowGraph graph,
+                                                      long version) {
+        // if the user does not exist in the network, it is an error
         if (!users.containsKey(userId)) {
-            InputOutputOperations.logError("generate_feed");
-            return;
+            return null;
         }
         User user = users.get(userId);
-        // Generate the list of posts for the user's feed,
-        // this feed consists of posts from the users that the user follows and has not seen yet
-        ArrayList<Post> feed = new ArrayList<>();
-        for (String followedId : user.following) {
-            User followedUser = users.get(followedId);
-            for (Post post : followedUser.posts) {
-                if (!user.seenPosts.contains(post.postId)) {
-                    feed.add(post);
-                }
+        // a feed computed by generate_feed_all is returned if nothing it depends on changed since
+        CachedFeed cached = user.cachedFeed;
+        if (cached != null) {
+            ArrayList<PostVersion> feed = cached.first(user, num, users, graph, version);
+            if (feed != null) {
+                Metrics.add(Metrics.CACHED_FEEDS, 1);
+                return feed;
             }
+            Metrics.add(Metrics.STALE_CACHED_FEEDS, 1);
         }
-        // Sort by likes (descending), then lexicographically by post ID using heap sort
-        ArrayList<Post> sortedFeed = MyHeapSort.heapSort(feed);
+        return computeFeed(user, num, users, graph, version);
+    }
+    // Get the posts from the users that the user follows and has not seen yet,
+    // sorted by likes (descending), then lexicographically by post ID
+    private static ArrayList<PostVersion> computeFeed(User user, int num, MySymbolTable<User> users, FollowGraph graph,
+                                                      long version) {
+        if (Settings.feedMode == Settings.FeedMode.PUSH) {
+            return collectPushFeed(user, num);
+        }
+        return collectFeed(openFeed(user, users, graph, version), num);
+    }
+    /**
+     * Computes the first posts of the feed of every user in parallel, and keeps them for the feed reads that follow.
+     * Must be called while no other command runs.
+     *
+     * @param num The number of posts computed for each user.
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @return The number of users whose feeds were computed.
+     *
+     * The users are split into ranges that the threads of a fork-join pool split further and steal from each other,
+     * so a few users who follow many others do not keep one thread busy while the others wait.
+     */
+    public static int generateFeedAll(int num, MySymbolTable<User> users, FollowGraph graph) {
+        int userCount = users.size();
+        long version = Snapshots.current();
+        ForkJoinPool.commonPool().invoke(new FeedRangeTask(0, userCount, num, users, graph, version));
+        return userCount;
+    }
+    // Computes the feeds of the users in a range of interned IDs, splitting the range while it is large
+    private static final class FeedRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int USERS_PER_TASK = 256;
 
-        InputOutputOperations.log("Feed for " + userId + ":");
-        int count = 0; // tracks the number of posts retrieved
-        for (Post post : sortedFeed) {
-            if (count >= num) {
-                break;
+        private final int start;
+        private final int end;
+        private final int num;
+        private final MySymbolTable<User> users;
+        private final FollowGraph graph;
+        private final long version;
+
+        FeedRangeTask(int start, int end, int num, MySymbolTable<User> users, FollowGraph graph, long version) {
+            this.start = start;
+            this.end = end;
+            this.num = num;
+            this.users = users;
+            this.graph = graph;
+            this.version = version;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > USERS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new FeedRangeTask(start, middle, num, users, graph, version),
+                        new FeedRangeTask(middle, end, num, users, graph, version));
+                return;
+            }
+            for (int index = start; index < end; index++) {
+                User user = users.get(index);
+                // nothing changes while the feeds are computed, so the newest trees are those of the version
+                ArrayList<PostVersion> feed = computeFeed(user, num, users, graph, Snapshots.LATEST);
+                user.cachedFeed = new CachedFeed(user, feed, num, version);
             }
-            InputOutputOperations.log("Post ID: " + post.postId + ", Author: " + post.authorId + ", Likes: " + post.likes);
-            count++;
         }
-        // If fewer posts are available than requested, log the "No more posts" message
-        if (count < num) {
-            InputOutputOperations.log("No more posts available for " + userId + ".");
+    }
+    /**
+     * Collects the first posts of a user's materialized feed, in push feed mode.
+     *
+     * @param user The user for whom the feed is being generated.
+     * @param num The maximum number of posts needed.
+     * @return An ArrayList of at most num posts, sorted by likes (descending) and then lexicographically by post ID.
+     *
+     * The posts are collected before they are used, since liking a post changes its place in the feed.
+     */
+    private static ArrayList<PostVersion> collectPushFeed(User user, int num) {
+        ArrayList<PostVersion> feed = new ArrayList<>();
+        for (Post post : user.feed) {
+            if (feed.size() >= num) {
+                break;
+            }
+            feed.add(PostVersion.of(post));
         }
+        return feed;
     }
     /**
-     * Generates a feed of posts for scrolling purposes.
+     * Opens a merge of a user's feed, in pull and hybrid feed modes.
      *
      * @param user The user for whom the feed is being generated.
-     * @param users A hashmap containing all users in the network.
-     * @return An ArrayList of posts, sorted by likes (descending) and then lexicographically by post ID.
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @param version The snapshot version of the posts of the followed users.
+     * @return The merger, whose streams of followed users start at the user's scroll cursor.
+     *
+     * In pull feed mode the posts are merged from the followed users.
+     * In hybrid feed mode the materialized feed is merged with the posts of the followed celebrities.
      */
-    private static ArrayList<Post> generateFeedForScroll(User user, MyHashMap<String, User> users) {
-        ArrayList<Post> feed = new ArrayList<>();
-        for (String followedId : user.following) {
-            User followedUser = users.get(followedId);
-            for (Post post : followedUser.posts) {
-                if (!user.seenPosts.contains(post.postId)) {
-                    feed.add(post);
+    private static FeedMerger openFeed(User user, MySymbolTable<User> users, FollowGraph graph, long version) {
+        FeedMerger merger = new FeedMerger(user);
+        MyIntHashSet.IntIterator it;
+        if (Settings.feedMode == Settings.FeedMode.HYBRID) {
+            merger.addPosts(user.feed);
+            it = user.followedCelebrities.iterator();
+        } else {
+            // the followed users are read from the epoch of the follow graph, unless the user changed them since
+            FollowGraph.Row row = graph.following(user);
+            if (row != null) {
+                for (int i = row.start; i < row.end; i++) {
+                    User author = users.get(row.neighbors[i]);
+                    merger.addAuthor(author, author.rankedPosts.at(version));
                 }
+                return merger;
             }
+            it = user.following.iterator();
+        }
+        while (it.hasNext()) {
+            User author = users.get(it.next());
+            merger.addAuthor(author, author.rankedPosts.at(version));
         }
-        // Sort by likes (descending), then lexicographically by post ID
-        return MyHeapSort.heapSort(feed);
+        return merger;
+    }
+    // Collects at most num posts from a merge, before any of them is used,
+    // since liking a post changes its place in the feed
+    private static ArrayList<PostVersion> collectFeed(FeedMerger merger, int num) {
+        ArrayList<PostVersion> feed = new ArrayList<>();
+        PostVersion post;
+        while (feed.size() < num && (post = merger.next()) != null) {
+            feed.add(post);
+        }
+        return feed;
     }
     /**
      * Allows a user to scroll through their feed and interact with posts.
      *
-     * @param params A string containing the user ID, the number of posts to scroll through, and a sequence of actions (0 for "saw," 1 for "like").
-     * @param users A hashmap containing all users in the network.
-     * @param posts A hashmap containing all posts in the network.
+     * @param userId The ID of the user who scrolls.
+     * @param num The number of posts to scroll through.
+     * @param actions The action for each post, 0 for "saw" and 1 for "like".
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @return The posts scrolled through, or null if the user does not exist.
      *
-     * For each post in the feed, logs whether the user saw or liked the post.
+     * The action for each returned post has been applied. If fewer posts are returned than requested,
+     * there were not enough posts in the feed.
      */
-    public static void scrollThroughFeed(String params, MyHashMap<String, User> users, MyHashMap<String, Post> posts) {
-        String[] parts = params.split(" ");
-        String userId = parts[0];
-        int num = Integer.parseInt(parts[1]);
-        // if the user does not exist in the network, log an error
+    public static ArrayList<Post> scrollThroughFeed(String userId, int num, int[] actions, MySymbolTable<User> users,
+                                                    FollowGraph graph) {
+        // if the user does not exist in the network, it is an error
         if (!users.containsKey(userId)) {
-            InputOutputOperations.logError("scroll_through_feed");
-            return;
+            return null;
         }
 
         User user = users.get(userId);
 
-        // Generate the list of posts for the user's feed.
-        ArrayList<Post> feed = generateFeedForScroll(user, users);
-
-        InputOutputOperations.log(userId + " is scrolling through feed:");
-
-        boolean notEnoughPosts = false;
+        // Generate the list of posts for the user's feed, the merge continues where the last scroll stopped.
+        // The scroll holds the locks of the followed users, so it reads their newest posts
+        FeedMerger merger = Settings.feedMode == Settings.FeedMode.PUSH ? null : openFeed(user, users, graph, Snapshots.LATEST);
+        ArrayList<PostVersion> collected = merger == null ? collectPushFeed(user, num) : collectFeed(merger, num);
 
-        for (int i = 0; i < num; i++) {
-            // check if there are enough posts in the feed
-            if (i >= feed.size()) {
-                notEnoughPosts = true;
-                break;
-            }
-            // gets the post and the action for the current post
-            Post post = feed.get(i);
-            int action = Integer.parseInt(parts[2 + i]); // Action for the current post
-
-            if (action == 1) {
-                // Like the post and log appropriately, there will be no another log in toggleLike since isLogged is false
-                PostOperations.toggleLike(userId + " " + post.postId, false,users, posts);
-                InputOutputOperations.log(userId + " saw " + post.postId + " while scrolling and clicked the like button.");
+        ArrayList<Post> feed = new ArrayList<>(collected.size());
+        for (int i = 0; i < collected.size(); i++) {
+            Post post = collected.get(i).post;
+            feed.add(post);
+            if (actions[i] == 1) {
+                // liking the post also marks it as seen
+                PostOperations.toggleLike(user, post, users);
             } else {
-                // Log only "saw" for action 0
-                InputOutputOperations.log(userId + " saw " + post.postId + " while scrolling.");
-                user.seenPosts.add(post.postId);
+                FeedStore.markSeen(user, post);
+                WriteAheadLog.logSeePost(user, post);
             }
         }
-
-        // if the num is bigger than feed size, log the appropriate message
-        if (notEnoughPosts) {
-            InputOutputOperations.log("No more posts in feed.");
+        // every post taken from the merge is seen now, so the cursor can move past them
+        if (merger != null) {
+            merger.saveCursors();
         }
+        return feed;
     }
 
 
@@ -0,0 +1,170 @@
+/**
+ * Keeps the materialized feed of every user when the feed mode is {@link Settings.FeedMode#PUSH}
+ * or {@link Settings.FeedMode#HYBRID}.
+ *
+ * The feed of a user holds the unseen posts from the users it follows, ordered by likes.
+ * Write operations fan their changes out to the affected feeds as they run, so reading a feed is a prefix scan.
+ *
+ * In hybrid mode the posts of users with many followers ("celebrities") are not fanned out, since every write
+ * would touch millions of feeds. Their posts are merged in when a feed is read instead.
+ * A user becomes a celebrity when its follower count reaches the celebrity threshold, and stops being one
+ * when the count drops below half of the threshold, so a user near the threshold does not switch back and forth.
+ * In pull mode every method here returns without doing anything.
+ */
+public class FeedStore {
+
+    public static boolean isEnabled() {
+        return Settings.feedMode != Settings.FeedMode.PULL;
+    }
+
+    // Checks if the posts of the author are written to the feeds of its followers
+    public static boolean fansOut(User author) {
+        return Settings.feedMode == Settings.FeedMode.PUSH
+                || (Settings.feedMode == Settings.FeedMode.HYBRID && !author.celebrity);
+    }
+
+    /**
+     * Adds a new post to the feeds of its author's followers.
+     *
+     * @param post The post that was created.
+     * @param author The user who created the post.
+     * @param users A symbol table containing all users in the network.
+     */
+    public static void onPostCreated(Post post, User author, MySymbolTable<User> users) {
+        if (!fansOut(author)) {
+            return;
+        }
+        // a new post can not be seen by anyone yet
+        for (MyIntHashSet.IntIterator it = author.followers.iterator(); it.hasNext(); ) {
+            users.get(it.next()).feed.add(post);
+            Metrics.add(Metrics.FAN_OUT, 1);
+        }
+    }
+
+    /**
+     * Takes a post out of the feeds it is in, must be called before the likes of the post change.
+     *
+     * @param post The post whose likes are about to change.
+     * @param author The user who created the post.
+     * @param users A symbol table containing all users in the network.
+     */
+    public static void beforeLikeChange(Post post, User author, MySymbolTable<User> users) {
+        if (!fansOut(author)) {
+            return;
+        }
+        for (MyIntHashSet.IntIterator it = author.followers.iterator(); it.hasNext(); ) {
+            users.get(it.next()).feed.remove(post);
+            Metrics.add(Metrics.FAN_OUT, 1);
+        }
+    }
+
+    /**
+     * Puts a post back into the feeds of the followers that have not seen it, after its likes changed.
+     *
+     * @param post The post whose likes changed.
+     * @param author The user who created the post.
+     * @param users A symbol table containing all users in the network.
+     */
+    public static void afterLikeChange(Post post, User author, MySymbolTable<User> users) {
+        if (!fansOut(author)) {
+            return;
+        }
+        for (MyIntHashSet.IntIterator it = author.followers.iterator(); it.hasNext(); ) {
+            User follower = users.get(it.next());
+            if (!follower.seenPosts.contains(post.index)) {
+                follower.feed.add(post);
+                Metrics.add(Metrics.FAN_OUT, 1);
+            }
+        }
+    }
+
+    /**
+     * Marks a post as seen by a user and takes it out of the user's feed.
+     *
+     * @param user The user who saw the post.
+     * @param post The post that was seen.
+     */
+    public static void markSeen(User user, Post post) {
+        user.seenPosts.add(post.index);
+        if (isEnabled()) {
+            user.feed.remove(post);
+        }
+    }
+
+    /**
+     * Updates the feeds after a user followed another user.
+     *
+     * @param follower The user who followed.
+     * @param followedUser The user who was followed, already having the follower in its followers.
+     * @param users A symbol table containing all users in the network.
+     */
+    public static void onFollow(User follower, User followedUser, MySymbolTable<User> users) {
+        if (!isEnabled()) {
+            return;
+        }
+        updateCelebrity(followedUser, users);
+        if (followedUser.celebrity) {
+            follower.followedCelebrities.add(followedUser.index);
+            return;
+        }
+        for (Post post : followedUser.posts) {
+            if (!follower.seenPosts.contains(post.index)) {
+                follower.feed.add(post);
+                Metrics.add(Metrics.FAN_OUT, 1);
+            }
+        }
+    }
+
+    /**
+     * Updates the feeds after a user unfollowed another user.
+     *
+     * @param follower The user who unfollowed.
+     * @param unfollowedUser The user who was unfollowed, already without the follower in its followers.
+     * @param users A symbol table containing all users in the network.
+     */
+    public static void onUnfollow(User follower, User unfollowedUser, MySymbolTable<User> users) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (unfollowedUser.celebrity) {
+            follower.followedCelebrities.remove(unfollowedUser.index);
+        } else {
+            for (Post post : unfollowedUser.posts) {
+                follower.feed.remove(post);
+                Metrics.add(Metrics.FAN_OUT, 1);
+            }
+        }
+        updateCelebrity(unfollowedUser, users);
+    }
+
+    // Moves the posts of the author out of or into its followers' feeds when its follower count crosses the threshold
+    private static void updateCelebrity(User author, MySymbolTable<User> users) {
+        if (Settings.feedMode != Settings.FeedMode.HYBRID) {
+            return;
+        }
+        int followerCount = author.followers.size();
+        if (!author.celebrity && followerCount >= Settings.celebrityThreshold) {
+            author.celebrity = true;
+            for (MyIntHashSet.IntIterator it = author.followers.iterator(); it.hasNext(); ) {
+                User follower = users.get(it.next());
+                follower.followedCelebrities.add(author.index);
+                for (Post post : author.posts) {
+                    follower.feed.remove(post);
+                    Metrics.add(Metrics.FAN_OUT, 1);
+                }
+            }
+        } else if (author.celebrity && followerCount < Settings.celebrityThreshold / 2) {
+            author.celebrity = false;
+            for (MyIntHashSet.IntIterator it = author.followers.iterator(); it.hasNext(); ) {
+                User follower = users.get(it.next());
+                follower.followedCelebrities.remove(author.index);
+                for (Post post : author.posts) {
+                    if (!follower.seenPosts.contains(post.index)) {
+                        follower.feed.add(post);
+                        Metrics.add(Metrics.FAN_OUT, 1);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A read-only copy of who follows whom in compressed sparse row form, enabled with the {@code --csr-graph=true} option.
+ *
+ * An epoch of the graph keeps the followed users of every user as a sorted run of interned IDs in one int array,
+ * and the start of each run in a second array, so reading them walks contiguous memory instead of the slots of a
+ * hash set. The epochs are immutable and built by a background thread, once the follows and unfollows since the
+ * last one reach a fraction of its size.
+ *
+ * The follow commands keep changing the sets of the users, which stay the source of truth. An epoch records the
+ * {@code followingVersion} of every user when its row was copied, so the users that followed or unfollowed someone
+ * since then are read from their own sets until the next epoch. Those sets are the overlay of the recent changes,
+ * and the rows of all other users are read from the epoch.
+ */
+public class FollowGraph {
+    private static final int MIN_REBUILD_CHANGES = 1024; // the changes that start an epoch, also for small graphs
+    private static final int REBUILD_FRACTION = 8; // an epoch with n follows is rebuilt after n / 8 changes
+    private static final int SLICE_SIZE = 4096; // the users copied at once while holding the read lock of the network
+
+    // The followed users of one user, in increasing order in neighbors[start..end)
+    public static final class Row {
+        final int[] neighbors;
+        final int start;
+        final int end;
+
+        Row(int[] neighbors, int start, int end) {
+            this.neighbors = neighbors;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int size() {
+            return end - start;
+        }
+    }
+
+    // One build of the graph: the row of user i is neighbors[offsets[i]..offsets[i + 1]),
+    // copied when the user's followingVersion was versions[i]
+    private static final class Epoch {
+        final int userCount;
+        final int[] offsets;
+        final int[] neighbors;
+        final int[] versions;
+
+        Epoch(int userCount, int[] offsets, int[] neighbors, int[] versions) {
+            this.userCount = userCount;
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+            this.versions = versions;
+        }
+    }
+
+    private final MySymbolTable<User> users;
+    private final StampedLock networkLock;
+    private final boolean enabled;
+    private volatile Epoch epoch = new Epoch(0, new int[1], new int[0], new int[0]);
+    private final AtomicLong changes = new AtomicLong(); // the follows and unfollows since the current epoch started
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /**
+     * Constructs the graph of a network.
+     *
+     * @param users The users of the network.
+     * @param networkLock The lock of the network, whose read lock keeps the commands that run alone from changing
+     *                    the users while their rows are copied.
+     * @param enabled Whether epochs are built, if not every row is read from the sets of the users.
+     */
+    public FollowGraph(MySymbolTable<User> users, StampedLock networkLock, boolean enabled) {
+        this.users = users;
+        this.networkLock = networkLock;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the users followed by a user from the current epoch. The caller must hold the lock of the user,
+     * or the write lock of the network.
+     *
+     * @param user The user.
+     * @return The row of the user, or null if the graph is disabled or the user followed or unfollowed someone
+     *         since the epoch was built, then the row must be read from {@code user.following}.
+     */
+    public Row following(User user) {
+        if (!enabled) {
+            return null;
+        }
+        Epoch current = epoch;
+        int index = user.index;
+        if (index >= current.userCount || current.versions[index] != user.followingVersion) {
+            Metrics.add(Metrics.OVERLAY_ROWS, 1);
+            return null;
+        }
+        Metrics.add(Metrics.GRAPH_ROWS, 1);
+        return new Row(current.neighbors, current.offsets[index], current.offsets[index + 1]);
+    }
+
+    /**
+     * Counts a follow or unfollow, and starts building a new epoch in the background when enough of them
+     * are read from the sets of the users.
+     */
+    public void changed() {
+        if (enabled) {
+            changes.incrementAndGet();
+            rebuildIfStale();
+        }
+    }
+
+    // Starts building a new epoch in the background, such as after the network was loaded from a file
+    public void rebuild() {
+        if (enabled && rebuilding.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::build, "follow-graph");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void rebuildIfStale() {
+        if (changes.get() >= Math.max(MIN_REBUILD_CHANGES, epoch.neighbors.length / REBUILD_FRACTION)) {
+            rebuild();
+        }
+    }
+
+    // Copies the rows of all users into a new epoch, a slice of users at a time so commands that run alone
+    // wait for one slice at most
+    private void build() {
+        try {
+            // the changes made from now on are either copied or make their rows stale
+            changes.set(0);
+            int userCount = users.size();
+            int[] offsets = new int[userCount + 1];
+            int[] versions = new int[userCount];
+            int[] neighbors = new int[Math.max(16, epoch.neighbors.length)];
+            int size = 0;
+            for (int sliceStart = 0; sliceStart < userCount; sliceStart += SLICE_SIZE) {
+                int sliceEnd = Math.min(userCount, sliceStart + SLICE_SIZE);
+                networkLock.readLock();
+                try {
+                    for (int index = sliceStart; index < sliceEnd; index++) {
+                        offsets[index] = size;
+                        User user = users.get(index);
+                        if (user == null) {
+                            versions[index] = -1; // never matches, the user is read from its set
+                            continue;
+                        }
+                        user.lock.readLock();
+                        try {
+                            versions[index] = user.followingVersion;
+                            int rowSize = user.following.size();
+                            if (size + rowSize > neighbors.length) {
+                                neighbors = Arrays.copyOf(neighbors, Math.max(neighbors.length * 2, size + rowSize));
+                            }
+                            for (MyIntHashSet.IntIterator it = user.following.iterator(); it.hasNext(); ) {
+                                neighbors[size++] = it.next();
+                            }
+                        } finally {
+                            user.lock.tryUnlockRead();
+                        }
+                        Arrays.sort(neighbors, offsets[index], size);
+                    }
+                } finally {
+                    networkLock.tryUnlockRead();
+                }
+            }
+            offsets[userCount] = size;
+            epoch = new Epoch(userCount, offsets, Arrays.copyOf(neighbors, size), versions);
+        } finally {
+            rebuilding.set(false);
+        }
+        // the changes made during the build may already call for the next epoch
+        rebuildIfStale();
+    }
+}
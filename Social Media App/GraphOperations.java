@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class GraphOperations {
+    private static final int MIN_USERS_PER_TASK = 1 << 12;
+    private static final int MAX_USERS_PER_TASK = 1 << 20; // 4 MB of counters
+
+    // A user recommended to follow, with the number of followed users who follow it
+    public static final class Recommendation {
+        final User user;
+        final int followedBy;
+
+        Recommendation(User user, int followedBy) {
+            this.user = user;
+            this.followedBy = followedBy;
+        }
+    }
+
+    /**
+     * Recommends users to follow: the users followed by the most of the users that the user follows.
+     *
+     * @param userId The ID of the user who gets the recommendations.
+     * @param k The maximum number of recommendations.
+     * @param users A symbol table containing all users in the network.
+     * @param graph The follow graph the followed users are read from.
+     * @return At most k recommendations, by the number of followed users who follow them (descending) and then
+     *         by the order the users were created in, or null if the user does not exist.
+     *
+     * The user itself and the users it already follows are not recommended. The caller must hold the locks of
+     * the user and of every user it follows.
+     */
+    public static ArrayList<Recommendation> recommendFollows(String userId, int k, MySymbolTable<User> users, FollowGraph graph) {
+        // if the user does not exist in the network, it is an error
+        if (!users.containsKey(userId)) {
+            return null;
+        }
+        User user = users.get(userId);
+        ArrayList<Recommendation> recommendations = new ArrayList<>();
+        if (k <= 0) {
+            return recommendations;
+        }
+        // the sorted followed users of the user and of every user it follows, copied from the sets of the users
+        // that changed them since the epoch of the graph, so the counting threads read no locked state
+        FollowGraph.Row own = sortedFollowing(user, graph);
+        FollowGraph.Row[] rows = new FollowGraph.Row[own.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = sortedFollowing(users.get(own.neighbors[own.start + i]), graph);
+        }
+        // every task scans all the rows, so there are only a few tasks per thread, and the counters of a task are bounded
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int tasks = pool.getParallelism() == 1 ? 1 : 4 * pool.getParallelism();
+        int usersPerTask = Math.min(MAX_USERS_PER_TASK, Math.max(MIN_USERS_PER_TASK, (users.size() + tasks - 1) / tasks));
+        long[] ranks = pool.invoke(new CountTask(0, users.size(), usersPerTask, user.index, own, rows, k));
+        for (long rank : ranks) {
+            recommendations.add(new Recommendation(users.get(Integer.MAX_VALUE - (int) rank), (int) (rank >>> 32)));
+        }
+        return recommendations;
+    }
+
+    // Returns the followed users of a user in increasing order, from the graph or from a sorted copy of its set
+    private static FollowGraph.Row sortedFollowing(User user, FollowGraph graph) {
+        FollowGraph.Row row = graph.following(user);
+        if (row != null) {
+            return row;
+        }
+        int[] neighbors = new int[user.following.size()];
+        int size = 0;
+        for (MyIntHashSet.IntIterator it = user.following.iterator(); it.hasNext(); ) {
+            neighbors[size++] = it.next();
+        }
+        Arrays.sort(neighbors);
+        return new FollowGraph.Row(neighbors, 0, size);
+    }
+
+    /**
+     * Counts the followers of the candidates whose interned IDs are in a range, and returns the ranks of the best
+     * k of them in descending order. A rank holds the count in the high bits, and the ID in the low bits such that
+     * a smaller ID ranks higher.
+     *
+     * Ranges larger than usersPerTask are split, so every task counts into an array of the size of its range, and
+     * finds the part of its range in every row with a binary search, since the rows are sorted. The memory used is
+     * at most one counter per user and k ranks per task, however many users the user follows.
+     */
+    private static final class CountTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int usersPerTask;
+        private final int userIndex;
+        private final FollowGraph.Row own;
+        private final FollowGraph.Row[] rows;
+        private final int k;
+
+        CountTask(int start, int end, int usersPerTask, int userIndex, FollowGraph.Row own, FollowGraph.Row[] rows, int k) {
+            this.start = start;
+            this.end = end;
+            this.usersPerTask = usersPerTask;
+            this.userIndex = userIndex;
+            this.own = own;
+            this.rows = rows;
+            this.k = k;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (end - start > usersPerTask) {
+                int middle = (start + end) >>> 1;
+                CountTask right = new CountTask(middle, end, usersPerTask, userIndex, own, rows, k);
+                right.fork();
+                long[] left = new CountTask(start, middle, usersPerTask, userIndex, own, rows, k).compute();
+                return best(k, left, right.join());
+            }
+            int[] counts = new int[end - start];
+            // the user and the users it follows are never counted
+            if (userIndex >= start && userIndex < end) {
+                counts[userIndex - start] = Integer.MIN_VALUE;
+            }
+            for (int i = firstAtLeast(own, start); i < own.end && own.neighbors[i] < end; i++) {
+                counts[own.neighbors[i] - start] = Integer.MIN_VALUE;
+            }
+            // the candidates that have been counted, so only they are ranked
+            int[] counted = new int[16];
+            int countedSize = 0;
+            for (FollowGraph.Row row : rows) {
+                for (int i = firstAtLeast(row, start); i < row.end && row.neighbors[i] < end; i++) {
+                    int candidate = row.neighbors[i] - start;
+                    if (counts[candidate]++ == 0) {
+                        if (countedSize == counted.length) {
+                            counted = Arrays.copyOf(counted, countedSize * 2);
+                        }
+                        counted[countedSize++] = candidate;
+                    }
+                }
+            }
+            long[] ranks = new long[countedSize];
+            for (int i = 0; i < countedSize; i++) {
+                int candidate = counted[i];
+                ranks[i] = ((long) counts[candidate] << 32) | (Integer.MAX_VALUE - (start + candidate));
+            }
+            return best(k, ranks);
+        }
+
+        // Returns the index of the first ID of a row that is at least the key, or the end of the row
+        private static int firstAtLeast(FollowGraph.Row row, int key) {
+            int low = row.start;
+            int high = row.end;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (row.neighbors[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Selects the k largest ranks with a heap of at most k entries, whose top is the worst rank kept.
+         *
+         * @param k The number of ranks to keep.
+         * @param groups The ranks to select from.
+         * @return The selected ranks in descending order.
+         */
+        private static long[] best(int k, long[]... groups) {
+            // the keys are negated ranks, so the largest key is the smallest rank
+            MyLongMaxHeap heap = new MyLongMaxHeap(Math.min(k, 64));
+            for (long[] ranks : groups) {
+                for (long rank : ranks) {
+                    if (heap.size() < k) {
+                        heap.insert(-rank, 0);
+                    } else if (-rank < heap.maxKey()) {
+                        heap.replaceMax(-rank, 0);
+                    }
+                }
+            }
+            long[] selected = new long[heap.size()];
+            for (int i = selected.length - 1; i >= 0; i--) {
+                selected[i] = -heap.maxKey();
+                heap.removeMax();
+            }
+            return selected;
+        }
+    }
+}
@@ -1,82 +1,240 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 
 public class InputOutputOperations {
-    static ArrayList<String> logMessages = new ArrayList<>();
-    public static void takeInput(String line, MyHashMap<String, User> users, MyHashMap<String, Post> posts) {
-        // splits the input line into two parts:
-        // the first word is the action
-        // the rest of the line is the argument
-        String[] parts = line.split(" ",2);
-        String action = parts[0];
-        if(action.equals("create_user")){
-            UserOperations.createUser(parts[1],users);
+    // Runs the command of the current line of a parser through the typed API and logs its result to a writer,
+    // the action is resolved to an opcode by the parser and its arguments are read from the line in place
+    static void execute(MyCommandParser parser, SocialNetwork network, MyLogWriter out) {
+        int opcode = parser.opcode();
+        Metrics.startCommand(CommandTable.name(opcode));
+        switch (opcode) {
+            case CommandTable.CREATE_USER: {
+                String userId = parser.restFrom(0);
+                if (network.createUser(userId)) {
+                    out.append("Created user with Id ").append(userId).endLine(".");
+                } else {
+                    logError(out, "create_user");
+                }
+                break;
+            }
+            case CommandTable.FOLLOW_USER: {
+                String followerId = parser.arg(0);
+                String followedId = parser.arg(1);
+                if (network.follow(followerId, followedId)) {
+                    out.append(followerId).append(" followed ").append(followedId).endLine(".");
+                } else {
+                    logError(out, "follow_user");
+                }
+                break;
+            }
+            case CommandTable.UNFOLLOW_USER: {
+                String followerId = parser.arg(0);
+                String unfollowedId = parser.arg(1);
+                if (network.unfollow(followerId, unfollowedId)) {
+                    out.append(followerId).append(" unfollowed ").append(unfollowedId).endLine(".");
+                } else {
+                    logError(out, "unfollow_user");
+                }
+                break;
+            }
+            case CommandTable.CREATE_POST: {
+                String userId = parser.arg(0);
+                String postId = parser.arg(1);
+                if (network.createPost(userId, postId, parser.restFrom(2)) != null) {
+                    out.append(userId).append(" created a post with Id ").append(postId).endLine(".");
+                } else {
+                    logError(out, "create_post");
+                }
+                break;
+            }
+            case CommandTable.TOGGLE_LIKE: {
+                String userId = parser.arg(0);
+                String postId = parser.arg(1);
+                SocialNetwork.LikeResult result = network.toggleLike(userId, postId);
+                if (result == SocialNetwork.LikeResult.FAILED) {
+                    logError(out, "toggle_like");
+                } else {
+                    out.append(userId).append(result == SocialNetwork.LikeResult.LIKED ? " liked " : " unliked ").append(postId).endLine(".");
+                }
+                break;
+            }
+            case CommandTable.SEE_POST: {
+                String userId = parser.arg(0);
+                String postId = parser.arg(1);
+                if (network.seePost(userId, postId)) {
+                    out.append(userId).append(" saw ").append(postId).endLine(".");
+                } else {
+                    logError(out, "see_post");
+                }
+                break;
+            }
+            case CommandTable.SEE_ALL_POSTS_FROM_USER: {
+                String viewerId = parser.arg(0);
+                String viewedId = parser.arg(1);
+                if (network.seeAllPostsFromUser(viewerId, viewedId)) {
+                    out.append(viewerId).append(" saw all posts of ").append(viewedId).endLine(".");
+                } else {
+                    logError(out, "see_all_posts_from_user");
+                }
+                break;
+            }
+            case CommandTable.GENERATE_FEED:
+                logFeed(parser.arg(0), parser.intArg(1), network, out);
+                break;
+            case CommandTable.SCROLL_THROUGH_FEED:
+                logScroll(parser.arg(0), parser.intArg(1), parser.intArgsFrom(2), network, out);
+                break;
+            case CommandTable.SORT_POSTS:
+                logSortedPosts(parser.restFrom(0), network, out);
+                break;
+            case CommandTable.RECOMMEND_FOLLOWS:
+                logRecommendations(parser.arg(0), parser.intArg(1), network, out);
+                break;
+            case CommandTable.GENERATE_FEED_ALL: {
+                int count = network.generateFeedAll(parser.intArg(0));
+                out.append("Generated feeds for ").append(count).endLine(" users.");
+                break;
+            }
+            case CommandTable.SAVE_SNAPSHOT: {
+                String path = parser.restFrom(0);
+                try {
+                    network.saveSnapshot(path);
+                    out.append("Saved snapshot to ").append(path).endLine(".");
+                } catch (IOException e) {
+                    logError(out, "save_snapshot");
+                }
+                break;
+            }
+            case CommandTable.LOAD_SNAPSHOT: {
+                String path = parser.restFrom(0);
+                try {
+                    if (network.loadSnapshot(path)) {
+                        out.append("Loaded snapshot from ").append(path).endLine(".");
+                    } else {
+                        logError(out, "load_snapshot");
+                    }
+                } catch (IOException e) {
+                    logError(out, "load_snapshot");
+                }
+                break;
+            }
+            default:
+                System.out.println("Invalid action");
         }
-        else if (action.equals("follow_user")){
-            UserOperations.followUser(parts[1],users);
+    }
+    private static void logFeed(String userId, int num, SocialNetwork network, MyLogWriter out) {
+        ArrayList<PostVersion> feed = network.generateFeed(userId, num);
+        if (feed == null) {
+            logError(out, "generate_feed");
+            return;
         }
-        else if (action.equals("unfollow_user")){
-            UserOperations.unfollowUser(parts[1],users);
+        out.append("Feed for ").append(userId).endLine(":");
+        for (PostVersion post : feed) {
+            out.append("Post ID: ").append(post.post.postId).append(", Author: ").append(post.post.authorId).append(", Likes: ").append(post.likes).endLine();
         }
-        else if (action.equals("create_post")){
-            PostOperations.createPost(parts[1],users,posts);
+        // If fewer posts are available than requested, log the "No more posts" message
+        if (feed.size() < num) {
+            out.append("No more posts available for ").append(userId).endLine(".");
         }
-        else if(action.equals("toggle_like")){
-            PostOperations.toggleLike(parts[1],true, users, posts);
+    }
+    private static void logRecommendations(String userId, int k, SocialNetwork network, MyLogWriter out) {
+        ArrayList<GraphOperations.Recommendation> recommendations = network.recommendFollows(userId, k);
+        if (recommendations == null) {
+            logError(out, "recommend_follows");
+            return;
         }
-        else if(action.equals("see_post")){
-            PostOperations.seePost(parts[1],users,posts);
+        out.append("Recommended follows for ").append(userId).endLine(":");
+        for (GraphOperations.Recommendation recommendation : recommendations) {
+            out.append("User ID: ").append(recommendation.user.userId).append(", Followed by: ").append(recommendation.followedBy).endLine();
         }
-        else if(action.equals("see_all_posts_from_user")){
-            PostOperations.seeAllPostsFromUser(parts[1],users);
+        // if fewer users are followed by the followed users than requested, log the appropriate message
+        if (recommendations.size() < k) {
+            out.append("No more users to recommend for ").append(userId).endLine(".");
         }
-        else if(action.equals("generate_feed")){
-            FeedOperations.generateFeed(parts[1],users);
+    }
+    private static void logScroll(String userId, int num, int[] actions, SocialNetwork network, MyLogWriter out) {
+        ArrayList<Post> scrolled = network.scrollThroughFeed(userId, num, actions);
+        if (scrolled == null) {
+            logError(out, "scroll_through_feed");
+            return;
         }
-        else if(action.equals("scroll_through_feed")){
-            FeedOperations.scrollThroughFeed(parts[1],users,posts);
+        out.append(userId).endLine(" is scrolling through feed:");
+        for (int i = 0; i < scrolled.size(); i++) {
+            String postId = scrolled.get(i).postId;
+            if (actions[i] == 1) {
+                out.append(userId).append(" saw ").append(postId).endLine(" while scrolling and clicked the like button.");
+            } else {
+                out.append(userId).append(" saw ").append(postId).endLine(" while scrolling.");
+            }
         }
-        else if(action.equals("sort_posts")){
-            PostOperations.sortPosts(parts[1],users);
+        // if the num is bigger than feed size, log the appropriate message
+        if (scrolled.size() < num) {
+            out.endLine("No more posts in feed.");
         }
-        else{
-            System.out.println("Invalid action");
+    }
+    private static void logSortedPosts(String userId, SocialNetwork network, MyLogWriter out) {
+        ArrayList<PostVersion> sortedPosts = network.sortPosts(userId);
+        if (sortedPosts == null) {
+            logError(out, "sort_posts");
+            return;
+        }
+        // if there is no post from the user, log the appropriate message
+        if (sortedPosts.isEmpty()) {
+            out.append("No posts from ").append(userId).endLine(".");
+            return;
+        }
+        out.append("Sorting ").append(userId).endLine("'s posts:");
+        for (PostVersion post : sortedPosts) {
+            out.append(post.post.postId).append(", Likes: ").append(post.likes).endLine();
         }
     }
 
-    // All log messages are stored in the logMessages ArrayList for later output
-    public static void log(String message) {
-        logMessages.add(message);
-    }
-    public static void logError(String operation) {
-        log("Some error occurred in " + operation + ".");
+    // Writes the standard error line of an operation
+    static void logError(MyLogWriter out, String operation) {
+        out.append("Some error occurred in ").append(operation).endLine(".");
     }
     /**
      * Processes an input file containing commands and writes the results to an output file.
      *
      * @param inputFile The path to the input file containing commands.
      * @param outputFile The path to the output file where results will be written.
-     * @param users A hashmap containing all users in the network.
-     * @param posts A hashmap containing all posts in the network.
+     * @param network The social network that runs the commands.
      * @throws Exception If an error occurs during file reading or writing.
      *
-     * Reads commands line by line from the input file and executes them using the
-     * {@link #takeInput(String, MyHashMap, MyHashMap)} method. All log messages
-     * are written to the output file at the end.
+     * The input file is memory-mapped and its commands are tokenized in place by a {@link MyCommandParser},
+     * then executed one by one. The log messages are written to the output file in large blocks while the commands run.
+     * With more than one thread the independent commands run at the same time by a {@link ParallelCommandRunner},
+     * and the log is the same. Otherwise a {@link PipelinedCommandRunner} may read the input and write the log
+     * on their own threads while the commands run.
      */
-    public static void processInput(String inputFile,String outputFile, MyHashMap<String, User> users, MyHashMap<String, Post> posts) throws Exception {
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFile));
-             PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                takeInput(line.trim(),users,posts);
+    public static void processInput(String inputFile,String outputFile, SocialNetwork network) throws Exception {
+        PipelinedCommandRunner pipeline = null;
+        try (FileChannel input = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the log is streamed to the output file while the commands run
+            MyLogWriter output = new MyLogWriter(channel);
+            MyCommandParser parser = new MyCommandParser(input);
+            if (Settings.threads > 1) {
+                new ParallelCommandRunner(network, Settings.threads).run(parser, output);
+            } else if (Settings.pipeline) {
+                pipeline = new PipelinedCommandRunner(network);
+                pipeline.run(parser, channel);
+            } else {
+                while (parser.next()) {
+                    execute(parser, network, output);
+                }
             }
-            for (String log : logMessages) {
-                writer.println(log);
+            output.flush();
+        }
+        if (Settings.stats) {
+            Metrics.report(System.err);
+            if (pipeline != null) {
+                pipeline.report(System.err);
             }
         }
     }
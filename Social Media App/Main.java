@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * This class is the main class of the project. It creates a social network with users and posts.
  * The main method reads the input file and processes the input line by line.
@@ -6,14 +8,48 @@
  */
 
 public class Main {
-    // created a social network with users and posts
-    MyHashMap<String, User> users = new MyHashMap<>();
-    MyHashMap<String, Post> posts = new MyHashMap<>();
-
-
     public static void main(String[] args) throws Exception {
-        Main socialNetwork = new Main();
+        // the options after the input and output files configure the network,
+        // in server mode there are no files and all the arguments are options
+        int firstOption = args.length > 0 && args[0].startsWith("--") ? 0 : 2;
+        for (int i = firstOption; i < args.length; i++) {
+            Settings.parse(args[i]);
+        }
+        // created a social network with users and posts
+        SocialNetwork socialNetwork = new SocialNetwork();
+        if (Settings.wal != null) {
+            // recover the changes of earlier runs, and log the changes of this one
+            socialNetwork.openWriteAheadLog(Settings.wal, Settings.loadSnapshot, Settings.walWindow);
+        } else if (Settings.loadSnapshot != null) {
+            // start from the saved state instead of an empty network
+            socialNetwork.loadSnapshot(Settings.loadSnapshot);
+        }
+        if (Settings.serve != null) {
+            // serve the commands of many batches until the process is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                closeWriteAheadLog();
+                if (Settings.stats) {
+                    Metrics.report(System.err);
+                    WriteAheadLog.report(System.err);
+                }
+            }));
+            new CommandServer(socialNetwork).serve(Settings.serve);
+            return;
+        }
         // process the input file, read line by line
-        InputOutputOperations.processInput(args[0], args[1], socialNetwork.users, socialNetwork.posts);
+        InputOutputOperations.processInput(args[0], args[1], socialNetwork);
+        closeWriteAheadLog();
+        if (Settings.stats) {
+            WriteAheadLog.report(System.err);
+        }
+    }
+
+    // Writes the changes that still wait for the durability window to the disk
+    private static void closeWriteAheadLog() {
+        try {
+            WriteAheadLog.close();
+        } catch (IOException e) {
+            System.err.println("The write-ahead log could not be written: " + e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Counts the work done by each kind of command, enabled with the {@code --stats=true} option.
+ * The counters are added to the command that is currently running and reported when the input is processed.
+ *
+ * Commands may run on several threads, so every thread counts into its own tables, which are summed by the report.
+ * The report must be written after all the commands have finished.
+ */
+public class Metrics {
+    // counter indices
+    static final int FAN_OUT = 0; // materialized feed entries added or removed while writing
+    static final int PULLED = 1;  // posts read from followed users while reading a feed
+    static final int RELABELED = 2; // post labels rewritten to make room for a new post ID
+    static final int SEEN_CHECKS = 3; // checks whether a user has seen a post
+    static final int FILTER_NEGATIVES = 4; // seen checks answered by the Bloom filter alone
+    static final int FILTER_FALSE_POSITIVES = 5; // seen checks the filter passed on for posts that were not seen
+    static final int GRAPH_ROWS = 6; // followed users read from an epoch of the follow graph
+    static final int OVERLAY_ROWS = 7; // followed users read from the sets of users changed since the epoch
+    static final int CACHED_FEEDS = 8; // feeds returned from the feeds computed by generate_feed_all
+    static final int STALE_CACHED_FEEDS = 9; // computed feeds that were out of date or too short when read
+    private static final String[] COUNTER_NAMES = {"fan-out feed updates", "pulled posts", "relabeled posts",
+            "seen checks", "seen checks answered by the filter", "filter false positives",
+            "follow graph rows", "changed follow rows", "cached feeds", "stale cached feeds"};
+
+    // The counters of one thread: for every action, index 0 holds the number of commands and the rest holds the counters
+    private static class Counters {
+        final MyHashMap<String, long[]> byAction = new MyHashMap<>();
+        long[] current;
+    }
+
+    // the tables of all threads, and the actions in the order they were first run
+    private static final ArrayList<Counters> allCounters = new ArrayList<>();
+    private static final ArrayList<String> actions = new ArrayList<>();
+    private static final ThreadLocal<Counters> threadCounters = ThreadLocal.withInitial(Metrics::register);
+
+    private static Counters register() {
+        Counters counters = new Counters();
+        synchronized (allCounters) {
+            allCounters.add(counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Starts counting for a new command.
+     *
+     * @param action The action of the command, such as "create_post".
+     */
+    public static void startCommand(String action) {
+        if (!Settings.stats) {
+            return;
+        }
+        Counters counters = threadCounters.get();
+        counters.current = counters.byAction.get(action);
+        if (counters.current == null) {
+            counters.current = new long[COUNTER_NAMES.length + 1];
+            counters.byAction.put(action, counters.current);
+            synchronized (actions) {
+                if (!actions.contains(action)) {
+                    actions.add(action);
+                }
+            }
+        }
+        counters.current[0]++;
+    }
+
+    // Adds the amount to the counter of the current command
+    public static void add(int counter, long amount) {
+        if (!Settings.stats) {
+            return;
+        }
+        long[] current = threadCounters.get().current;
+        if (current != null) {
+            current[counter + 1] += amount;
+        }
+    }
+
+    // Returns the counters of an action summed over all threads
+    private static long[] total(String action) {
+        long[] total = new long[COUNTER_NAMES.length + 1];
+        synchronized (allCounters) {
+            for (Counters counters : allCounters) {
+                long[] counts = counters.byAction.get(action);
+                if (counts != null) {
+                    for (int i = 0; i < total.length; i++) {
+                        total[i] += counts[i];
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes the totals and the per command averages of every counter.
+     *
+     * @param out The stream to write the report to.
+     */
+    public static void report(PrintStream out) {
+        for (String action : actions) {
+            long[] counters = total(action);
+            StringBuilder line = new StringBuilder(action + ": " + counters[0] + " commands");
+            for (int i = 0; i < COUNTER_NAMES.length; i++) {
+                if (counters[i + 1] != 0) {
+                    line.append(", ").append(COUNTER_NAMES[i]).append(": ").append(counters[i + 1])
+                            .append(" (").append(String.format("%.2f", (double) counters[i + 1] / counters[0])).append(" per command)");
+                }
+            }
+            out.println(line);
+        }
+        reportSeenFilter(out);
+    }
+
+    // Writes how many seen checks the Bloom filter answered, and how often it let through a post that was not seen
+    private static void reportSeenFilter(PrintStream out) {
+        long checks = 0;
+        long negatives = 0;
+        long falsePositives = 0;
+        for (String action : actions) {
+            long[] counters = total(action);
+            checks += counters[SEEN_CHECKS + 1];
+            negatives += counters[FILTER_NEGATIVES + 1];
+            falsePositives += counters[FILTER_FALSE_POSITIVES + 1];
+        }
+        if (checks == 0) {
+            return;
+        }
+        out.println(String.format("seen filter: answered %.1f%% of %d checks, false positive rate %.2f%%",
+                100.0 * negatives / checks, checks, 100.0 * falsePositives / Math.max(1, negatives + falsePositives)));
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed bitmap set of non-negative int keys, such as interned user and post IDs.
+ *
+ * The keys are grouped into chunks by their upper 16 bits, like Roaring bitmaps. Each chunk is stored in
+ * the smaller of two containers: a sorted array of the lower 16 bits while the chunk has at most
+ * {@value #ARRAY_LIMIT} keys, and a bitmap of 65536 bits once it has more.
+ * Sets of dense IDs therefore take a few bits per element instead of a hash table entry.
+ */
+public class MyBitmapSet {
+    // a chunk with more keys than this is stored as a bitmap, which then takes less space than an array
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1 << 10; // 65536 bits
+
+    // the upper 16 bits of the chunks in ascending order, and the container of each chunk
+    private char[] chunkKeys = new char[4];
+    private Container[] containers = new Container[4];
+    private int chunkCount = 0;
+    private int size = 0;
+
+    // A container holds the lower 16 bits of the keys of one chunk
+    private abstract static class Container {
+        int cardinality;
+
+        abstract boolean contains(char low);
+
+        // Adds the value and returns the container that now holds the chunk, which may be a new one
+        abstract Container add(char low);
+
+        // Removes the value and returns the container that now holds the chunk, which may be a new one
+        abstract Container remove(char low);
+    }
+
+    // A sorted array of values, used for sparse chunks
+    private static final class ArrayContainer extends Container {
+        char[] values = new char[4];
+
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        Container add(char low) {
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                // the array is full, so the chunk is converted to a bitmap
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int i = 0; i < cardinality; i++) {
+                    bitmap.add(values[i]);
+                }
+                return bitmap.add(low);
+            }
+            position = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = low;
+            cardinality++;
+            return this;
+        }
+
+        Container remove(char low) {
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                cardinality--;
+            }
+            return this;
+        }
+    }
+
+    // A bitmap of all 65536 values, used for dense chunks
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[BITMAP_WORDS];
+
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(char low) {
+            long before = words[low >>> 6];
+            long after = before | (1L << low);
+            if (before != after) {
+                words[low >>> 6] = after;
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(char low) {
+            long before = words[low >>> 6];
+            long after = before & ~(1L << low);
+            if (before == after) {
+                return this;
+            }
+            words[low >>> 6] = after;
+            cardinality--;
+            if (cardinality < ARRAY_LIMIT / 2) {
+                // the chunk became sparse, so it is converted back to an array
+                ArrayContainer array = new ArrayContainer();
+                array.values = new char[cardinality];
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = words[word];
+                    while (bits != 0) {
+                        array.values[array.cardinality++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+                return array;
+            }
+            return this;
+        }
+    }
+
+    // Adds an element to the set, returns false if it was already present
+    public boolean add(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        char high = (char) (key >>> 16);
+        int position = findChunk(high);
+        if (position < 0) {
+            position = -position - 1;
+            insertChunk(position, high, new ArrayContainer());
+        }
+        Container container = containers[position];
+        int before = container.cardinality;
+        containers[position] = container = container.add((char) key);
+        if (container.cardinality == before) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    // Removes an element from the set, if it is present returns true
+    public boolean remove(int key) {
+        if (key < 0) {
+            return false;
+        }
+        int position = findChunk((char) (key >>> 16));
+        if (position < 0) {
+            return false;
+        }
+        Container container = containers[position];
+        int before = container.cardinality;
+        containers[position] = container = container.remove((char) key);
+        if (container.cardinality == before) {
+            return false;
+        }
+        size--;
+        if (container.cardinality == 0) {
+            removeChunk(position);
+        }
+        return true;
+    }
+
+    // Checks if an element is present in the set
+    public boolean contains(int key) {
+        if (key < 0) {
+            return false;
+        }
+        int position = findChunk((char) (key >>> 16));
+        return position >= 0 && containers[position].contains((char) key);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Returns an iterator over the elements in ascending order
+    public IntIterator iterator() {
+        return new IntIterator();
+    }
+
+    // Internal helper methods
+
+    // Returns the position of the chunk, or (-(insertion point) - 1) if there is no such chunk
+    private int findChunk(char high) {
+        // most sets of dense IDs have a single chunk, so the last one is checked first
+        if (chunkCount > 0 && chunkKeys[chunkCount - 1] == high) {
+            return chunkCount - 1;
+        }
+        return Arrays.binarySearch(chunkKeys, 0, chunkCount, high);
+    }
+
+    private void insertChunk(int position, char high, Container container) {
+        if (chunkCount == chunkKeys.length) {
+            chunkKeys = Arrays.copyOf(chunkKeys, chunkCount * 2);
+            containers = Arrays.copyOf(containers, chunkCount * 2);
+        }
+        System.arraycopy(chunkKeys, position, chunkKeys, position + 1, chunkCount - position);
+        System.arraycopy(containers, position, containers, position + 1, chunkCount - position);
+        chunkKeys[position] = high;
+        containers[position] = container;
+        chunkCount++;
+    }
+
+    private void removeChunk(int position) {
+        System.arraycopy(chunkKeys, position + 1, chunkKeys, position, chunkCount - position - 1);
+        System.arraycopy(containers, position + 1, containers, position, chunkCount - position - 1);
+        chunkCount--;
+        containers[chunkCount] = null;
+    }
+
+    // An iterator that returns the elements as primitive ints, the set must not be modified while it is used
+    public class IntIterator {
+        private int chunk = 0;
+        private int position = 0; // the next index in an array container, or the next bit in a bitmap container
+        private int nextKey;
+
+        IntIterator() {
+            moveToNext();
+        }
+
+        private void moveToNext() {
+            while (chunk < chunkCount) {
+                int high = chunkKeys[chunk] << 16;
+                Container container = containers[chunk];
+                if (container instanceof ArrayContainer) {
+                    ArrayContainer array = (ArrayContainer) container;
+                    if (position < array.cardinality) {
+                        nextKey = high | array.values[position++];
+                        return;
+                    }
+                } else {
+                    long[] words = ((BitmapContainer) container).words;
+                    int word = position >>> 6;
+                    if (word < BITMAP_WORDS) {
+                        long bits = words[word] & (-1L << position);
+                        while (bits == 0 && ++word < BITMAP_WORDS) {
+                            bits = words[word];
+                        }
+                        if (bits != 0) {
+                            int low = (word << 6) + Long.numberOfTrailingZeros(bits);
+                            nextKey = high | low;
+                            position = low + 1;
+                            return;
+                        }
+                    }
+                }
+                chunk++;
+                position = 0;
+            }
+            nextKey = -1;
+        }
+
+        public boolean hasNext() {
+            return nextKey >= 0;
+        }
+
+        public int next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int key = nextKey;
+            moveToNext();
+            return key;
+        }
+    }
+}
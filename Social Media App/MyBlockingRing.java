@@ -0,0 +1,125 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded first-in first-out queue over a circular array, which hands items from producer threads to consumer
+ * threads. A producer waits while the ring is full and a consumer waits while it is empty, so a fast stage is
+ * held back by a slow one instead of filling the memory.
+ *
+ * The ring is closed when no more items will be put, or when one side gives up. Items put before the close are
+ * still taken, and then {@link #take()} returns null. The time each side spent waiting is counted.
+ *
+ * @param <E> The type of the items.
+ */
+public class MyBlockingRing<E> {
+    private final Object[] items;
+    private int head = 0; // the index of the oldest item
+    private int size = 0;
+    private boolean closed = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private long putWaitNanos = 0;
+    private long takeWaitNanos = 0;
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param capacity The number of items the ring can hold.
+     */
+    public MyBlockingRing(int capacity) {
+        items = new Object[capacity];
+    }
+
+    /**
+     * Adds an item, waiting while the ring is full.
+     *
+     * @param item The item, not null.
+     * @return true if the item was added, false if the ring is closed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean put(E item) throws InterruptedException {
+        lock.lock();
+        try {
+            if (size == items.length && !closed) {
+                long start = System.nanoTime();
+                while (size == items.length && !closed) {
+                    notFull.await();
+                }
+                putWaitNanos += System.nanoTime() - start;
+            }
+            if (closed) {
+                return false;
+            }
+            items[(head + size) % items.length] = item;
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest item, waiting while the ring is empty.
+     *
+     * @return The item, or null if the ring is closed and empty.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    @SuppressWarnings("unchecked")
+    public E take() throws InterruptedException {
+        lock.lock();
+        try {
+            if (size == 0 && !closed) {
+                long start = System.nanoTime();
+                while (size == 0 && !closed) {
+                    notEmpty.await();
+                }
+                takeWaitNanos += System.nanoTime() - start;
+            }
+            if (size == 0) {
+                return null;
+            }
+            E item = (E) items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            notFull.signal();
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Refuses new items and wakes the waiting threads
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the time producers waited for room, in nanoseconds
+    public long putWaitNanos() {
+        lock.lock();
+        try {
+            return putWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the time consumers waited for items, in nanoseconds
+    public long takeWaitNanos() {
+        lock.lock();
+        try {
+            return takeWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * A blocked Bloom filter of non-negative int keys. It tells that a key is surely not in a set without looking
+ * at the set, and may wrongly answer that a missing key is in the set.
+ *
+ * The bits are split into blocks of 512 bits, the size of a cache line, and all the bits of a key are set in the
+ * block chosen by its hash, so a query reads one cache line. With {@value #BITS_PER_KEY} bits per key and
+ * {@value #PROBES} bits set by every key, about 1-2% of the queries for missing keys are false positives while the
+ * filter holds at most {@link #capacity()} keys. Keys can not be removed, and the filter does not grow,
+ * so a filter that is full should be replaced by a bigger one.
+ */
+public class MyBloomFilter {
+    private static final int BLOCK_WORDS = 8; // 512 bits
+    private static final int BITS_PER_KEY = 10;
+    private static final int PROBES = 6; // each probe uses 9 bits of the hash to pick a bit of the block
+
+    private final long[] words;
+    private final int blockMask;
+    private final int capacity;
+
+    /**
+     * Constructs an empty filter.
+     *
+     * @param expectedKeys The number of keys the filter should hold with the designed false positive rate.
+     */
+    public MyBloomFilter(int expectedKeys) {
+        int blocks = 1;
+        while ((long) blocks * BLOCK_WORDS * 64 < (long) expectedKeys * BITS_PER_KEY) {
+            blocks <<= 1;
+        }
+        this.words = new long[blocks * BLOCK_WORDS];
+        this.blockMask = blocks - 1;
+        this.capacity = blocks * BLOCK_WORDS * 64 / BITS_PER_KEY;
+    }
+
+    // Returns the number of keys the filter can hold before its false positive rate goes up
+    public int capacity() {
+        return capacity;
+    }
+
+    public void add(int key) {
+        long hash = hash(key);
+        int block = block(hash);
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (int) (hash >>> (9 * i)) & 511;
+            words[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // Returns false if the key was never added, true if it may have been added
+    public boolean mightContain(int key) {
+        long hash = hash(key);
+        int block = block(hash);
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (int) (hash >>> (9 * i)) & 511;
+            if ((words[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The 64-bit finalizer of MurmurHash3, so that consecutive IDs get unrelated bits
+    private static long hash(int key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Returns the index of the first word of the key's block, the hash is multiplied again
+    // so that the block does not depend only on the bits the probes use
+    private int block(long hash) {
+        return ((int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) & blockMask) * BLOCK_WORDS;
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only storage for byte strings outside of the Java heap, such as the contents of posts.
+ *
+ * The bytes are copied into segments of a memory-mapped file, so the garbage collector never scans or moves them, and
+ * the operating system keeps in memory only the pages that are used. A stored string is referred to by the long
+ * offset returned by {@link #append(byte[])} and its length, which is all its owner keeps on the heap.
+ *
+ * Strings are never removed. Appending is synchronized, and any number of threads can read the strings stored
+ * before, since the segments never move and reads do not change their positions.
+ */
+public class MyByteArena {
+    private static final int SEGMENT_BITS = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS; // 64 MB of address space, filled as strings come
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private int segmentCount = 0;
+    private int position = 0; // the end of the used part of the last segment
+    private long fileEnd = 0;
+    private long size = 0;
+
+    // Constructs an arena over a new file in the default temporary directory
+    public MyByteArena() {
+        this(null);
+    }
+
+    /**
+     * Constructs an arena over a new temporary file, which is removed when the process ends.
+     *
+     * @param directory The directory of the file, or null for the default temporary directory.
+     * @throws UncheckedIOException If the file can not be created.
+     */
+    public MyByteArena(Path directory) {
+        try {
+            Path path = directory == null ? Files.createTempFile("arena", ".bin") : Files.createTempFile(directory, "arena", ".bin");
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                // the open channel keeps the file, so it is also gone after a crash
+                Files.delete(path);
+            } catch (IOException e) {
+                // systems that do not delete open files delete it at exit
+                path.toFile().deleteOnExit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores a byte string.
+     *
+     * @param bytes The bytes.
+     * @return The offset of the string, with the index of its segment in the high bits.
+     * @throws UncheckedIOException If the file can not grow.
+     */
+    public synchronized long append(byte[] bytes) {
+        if (segmentCount == 0 || bytes.length > SEGMENT_SIZE - position) {
+            addSegment(Math.max(SEGMENT_SIZE, bytes.length));
+        }
+        int segment = segmentCount - 1;
+        segments[segment].put(position, bytes);
+        long offset = ((long) segment << 32) | position;
+        position += bytes.length;
+        size += bytes.length;
+        return offset;
+    }
+
+    // Returns a copy of a stored string
+    public byte[] bytes(long offset, int length) {
+        byte[] bytes = new byte[length];
+        segments[(int) (offset >>> 32)].get((int) offset, bytes);
+        return bytes;
+    }
+
+    // Decodes a stored string from UTF-8, ASCII bytes are copied without going through the decoder
+    public String string(long offset, int length) {
+        byte[] bytes = bytes(offset, length);
+        for (byte b : bytes) {
+            if (b < 0) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    // Returns the number of stored bytes
+    public synchronized long size() {
+        return size;
+    }
+
+    // Maps a new segment at the end of the file, the segments of strings larger than a segment are as large as them
+    private void addSegment(int capacity) {
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, fileEnd, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        MappedByteBuffer[] current = segments;
+        if (segmentCount == current.length) {
+            MappedByteBuffer[] grown = new MappedByteBuffer[segmentCount * 2];
+            System.arraycopy(current, 0, grown, 0, segmentCount);
+            current = grown;
+        }
+        current[segmentCount] = segment;
+        segmentCount++;
+        segments = current;
+        fileEnd += capacity;
+        position = 0;
+    }
+}
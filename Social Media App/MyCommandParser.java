@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the commands of an input file one line at a time, without building a String for the line.
+ *
+ * The file is memory-mapped in large windows, and every line is tokenized in place: the parser only records where
+ * each token starts and ends in the mapped bytes. The action keyword is resolved to an opcode with {@link CommandTable},
+ * numbers are parsed straight from the bytes, and only the tokens that are used as IDs or content are decoded to Strings.
+ *
+ * Lines end with "\n", "\r" or "\r\n", like in {@link java.io.BufferedReader#readLine()}. Every line is trimmed, the
+ * first token is the action, and the arguments are the tokens separated by single spaces after it.
+ * The file is read as UTF-8.
+ */
+public class MyCommandParser {
+    private static final long WINDOW_SIZE = 1L << 28; // the part of the file mapped at once
+
+    private final FileChannel channel; // null if the parser reads a single buffer
+    private final long fileSize;
+    private long windowStart = 0; // the offset in the file of the first byte of the buffer
+    private long windowSize = WINDOW_SIZE;
+    private ByteBuffer buffer;
+    private int position = 0; // the index in the buffer of the start of the next line
+
+    private int opcode;
+    private int lineStart;
+    private int lineEnd;
+    private int argCount;
+    private int[] argStarts;
+    private int[] argEnds;
+    private byte[] scratch; // reused for decoding tokens
+    private int[] ints; // reused for returning the numbers of a line
+
+    /**
+     * Constructs a parser over a file.
+     *
+     * @param channel The channel of the input file, it is not closed by the parser.
+     * @throws IOException If the file can not be mapped.
+     */
+    public MyCommandParser(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        allocate(16, 256);
+        map(0);
+    }
+
+    /**
+     * Constructs a parser over the bytes of a buffer, from its position to its limit.
+     *
+     * @param buffer The buffer holding the commands.
+     */
+    public MyCommandParser(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer.slice();
+        this.fileSize = this.buffer.limit();
+        allocate(16, 256);
+    }
+
+    // Constructs a parser over a copied line, with the tokens of the line it was copied from
+    private MyCommandParser(byte[] line, MyCommandParser source) {
+        this.channel = null;
+        this.buffer = ByteBuffer.wrap(line);
+        this.fileSize = line.length;
+        this.position = line.length;
+        // a copy is read once, so its arrays are only as large as the line needs
+        allocate(Math.max(source.argCount, 1), 0);
+        opcode = source.opcode;
+        lineStart = 0;
+        lineEnd = line.length;
+        argCount = source.argCount;
+        for (int i = 0; i < argCount; i++) {
+            argStarts[i] = source.argStarts[i] - source.lineStart;
+            argEnds[i] = source.argEnds[i] - source.lineStart;
+        }
+    }
+
+    /**
+     * Moves to the next line of the input.
+     *
+     * @return true if there is a line, false if the input has ended.
+     * @throws IOException If the next part of the file can not be mapped.
+     */
+    public boolean next() throws IOException {
+        if (position >= buffer.limit() && windowStart + position >= fileSize) {
+            return false;
+        }
+        int end = findLineEnd();
+        int start = position;
+        // skip the line terminator, "\r\n" is a single terminator
+        position = end;
+        if (position < buffer.limit()) {
+            byte terminator = buffer.get(position++);
+            if (terminator == '\r') {
+                if (position == buffer.limit() && windowStart + position < fileSize) {
+                    remap(start);
+                    start = 0;
+                    end = position - 1;
+                }
+                if (position < buffer.limit() && buffer.get(position) == '\n') {
+                    position++;
+                }
+            }
+        }
+        tokenize(start, end);
+        return true;
+    }
+
+    // Returns the opcode of the action of the current line, or CommandTable.INVALID
+    public int opcode() {
+        return opcode;
+    }
+
+    public int argCount() {
+        return argCount;
+    }
+
+    // Returns an argument of the current line as a String
+    public String arg(int index) {
+        checkArg(index);
+        return decode(argStarts[index], argEnds[index]);
+    }
+
+    // Returns the rest of the current line as a String, starting from an argument
+    public String restFrom(int index) {
+        checkArg(index);
+        return decode(argStarts[index], lineEnd);
+    }
+
+    /**
+     * Parses an argument of the current line as a decimal int.
+     *
+     * @param index The index of the argument.
+     * @return The value of the argument.
+     * @throws NumberFormatException If the argument is not a valid int.
+     */
+    public int intArg(int index) {
+        checkArg(index);
+        int start = argStarts[index];
+        int end = argEnds[index];
+        boolean negative = start < end && buffer.get(start) == '-';
+        int i = negative || (start < end && buffer.get(start) == '+') ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + decode(start, end) + "\"");
+        }
+        // the value is accumulated as a negative number, so that Integer.MIN_VALUE can be parsed
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + decode(start, end) + "\"");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            throw new NumberFormatException("For input string: \"" + decode(start, end) + "\"");
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parses the arguments of the current line from an index to the end as decimal ints.
+     *
+     * @param from The index of the first argument.
+     * @return A reused array holding the values, valid until the next call, its length may be larger than the count.
+     */
+    public int[] intArgsFrom(int from) {
+        int count = Math.max(0, argCount - from);
+        if (ints.length < count) {
+            ints = new int[Math.max(count, ints.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            ints[i] = intArg(from + i);
+        }
+        return ints;
+    }
+
+    /**
+     * Copies the current line, so that it can be run after the parser has moved on.
+     *
+     * @return A parser over a copy of the trimmed line, already on that line.
+     */
+    public MyCommandParser copyLine() {
+        byte[] line = new byte[lineEnd - lineStart];
+        buffer.get(lineStart, line, 0, line.length);
+        return new MyCommandParser(line, this);
+    }
+
+    private void allocate(int args, int scratchSize) {
+        argStarts = new int[args];
+        argEnds = new int[args];
+        scratch = new byte[scratchSize];
+        ints = new int[args];
+    }
+
+    // Returns the index of the first line terminator after the position, remapping the file if the line crosses the window
+    private int findLineEnd() throws IOException {
+        int i = position;
+        while (true) {
+            int limit = buffer.limit();
+            for (; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+            if (windowStart + limit >= fileSize) {
+                return limit;
+            }
+            // the line goes on in the next part of the file, so the window is moved to start at the line
+            int scanned = i - position;
+            if (position == 0) {
+                windowSize *= 2; // the line is longer than the window
+            }
+            map(windowStart + position);
+            i = scanned;
+        }
+    }
+
+    // Moves the window to start at the current line, when its terminator is split across the end of the window
+    private void remap(int start) throws IOException {
+        int length = position - start;
+        map(windowStart + start);
+        position = length;
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(Math.min(windowSize, Integer.MAX_VALUE), fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+
+    // Splits a line into the action and its arguments after trimming it
+    private void tokenize(int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        int actionEnd = start;
+        while (actionEnd < end && buffer.get(actionEnd) != ' ') {
+            actionEnd++;
+        }
+        opcode = CommandTable.lookup(buffer, start, actionEnd);
+        argCount = 0;
+        if (actionEnd == end) {
+            return;
+        }
+        int tokenStart = actionEnd + 1;
+        for (int i = tokenStart; i <= end; i++) {
+            if (i == end || buffer.get(i) == ' ') {
+                addArg(tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+    }
+
+    private void addArg(int start, int end) {
+        if (argCount == argStarts.length) {
+            int[] starts = new int[argCount * 2];
+            int[] ends = new int[argCount * 2];
+            System.arraycopy(argStarts, 0, starts, 0, argCount);
+            System.arraycopy(argEnds, 0, ends, 0, argCount);
+            argStarts = starts;
+            argEnds = ends;
+        }
+        argStarts[argCount] = start;
+        argEnds[argCount] = end;
+        argCount++;
+    }
+
+    private void checkArg(int index) {
+        if (index >= argCount) {
+            throw new IllegalArgumentException("Missing argument " + index + " for " + CommandTable.name(opcode));
+        }
+    }
+
+    // Decodes the bytes between two indexes of the buffer, ASCII bytes are copied without going through the decoder
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        for (int i = 0; i < length; i++) {
+            if (scratch[i] < 0) {
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+}
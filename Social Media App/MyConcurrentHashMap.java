@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A hash map that many threads can read and write at the same time, with lock striping.
+ *
+ * The keys are split between {@value #STRIPES} stripes by their hash, and every stripe is a {@link MyHashMap}
+ * guarded by its own read-write {@link StampedLock}. Threads that use different stripes never wait for each other,
+ * and any number of threads can read the same stripe while nobody writes to it.
+ * Like {@link MyHashMap}, putting a key that is already present does not replace its value.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class MyConcurrentHashMap<K, V> implements Iterable<MyHashMap.Entry<K, V>> {
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final MyHashMap<K, V>[] maps;
+    private final StampedLock[] locks = new StampedLock[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    public MyConcurrentHashMap() {
+        this(false);
+    }
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param incrementalResize Whether the stripes grow a few buckets at a time, see {@link MyHashMap#MyHashMap(boolean)}.
+     */
+    @SuppressWarnings("unchecked")
+    public MyConcurrentHashMap(boolean incrementalResize) {
+        maps = (MyHashMap<K, V>[]) new MyHashMap<?, ?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            maps[i] = new MyHashMap<>(incrementalResize);
+            locks[i] = new StampedLock();
+        }
+    }
+
+    // Inserts a key-value pair if the key is not present, otherwise returns the value of the key
+    public V put(K key, V value) {
+        int stripe = stripe(key);
+        StampedLock lock = locks[stripe];
+        long stamp = lock.writeLock();
+        try {
+            V existing = maps[stripe].put(key, value);
+            if (existing == null) {
+                size.incrementAndGet();
+            }
+            return existing;
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    // Retrieves the value associated with the key, or null if there is none
+    public V get(K key) {
+        int stripe = stripe(key);
+        StampedLock lock = locks[stripe];
+        long stamp = lock.readLock();
+        try {
+            return maps[stripe].get(key);
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    // Removes a key-value pair from the map and returns the value
+    public V remove(K key) {
+        int stripe = stripe(key);
+        StampedLock lock = locks[stripe];
+        long stamp = lock.writeLock();
+        try {
+            V value = maps[stripe].remove(key);
+            if (value != null) {
+                size.decrementAndGet();
+            }
+            return value;
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Grows the stripes so that the expected number of entries are added without resizing,
+    // with room for the keys not being spread evenly
+    public void ensureCapacity(int expectedSize) {
+        int perStripe = expectedSize / STRIPES + expectedSize / (STRIPES * 8) + 1;
+        for (int i = 0; i < STRIPES; i++) {
+            long stamp = locks[i].writeLock();
+            try {
+                maps[i].ensureCapacity(perStripe);
+            } finally {
+                locks[i].unlock(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the entries of the map.
+     *
+     * The entries of each stripe are copied when the iterator reaches it, so the iterator never fails
+     * while other threads write. It sees every entry that is present during the whole iteration,
+     * and may or may not see the entries added or removed meanwhile.
+     */
+    public Iterator<MyHashMap.Entry<K, V>> iterator() {
+        return new Iterator<MyHashMap.Entry<K, V>>() {
+            private int nextStripe = 0;
+            private final ArrayList<MyHashMap.Entry<K, V>> entries = new ArrayList<>();
+            private int index = 0;
+
+            public boolean hasNext() {
+                while (index == entries.size() && nextStripe < STRIPES) {
+                    copyStripe(nextStripe++);
+                }
+                return index < entries.size();
+            }
+
+            public MyHashMap.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return entries.get(index++);
+            }
+
+            private void copyStripe(int stripe) {
+                entries.clear();
+                index = 0;
+                StampedLock lock = locks[stripe];
+                long stamp = lock.readLock();
+                try {
+                    for (Iterator<MyHashMap.Entry<K, V>> it = maps[stripe].iterator(); it.hasNext(); ) {
+                        entries.add(it.next());
+                    }
+                } finally {
+                    lock.unlock(stamp);
+                }
+            }
+        };
+    }
+
+    // Picks the stripe of a key from the high bits of its mixed hash, the stripe maps use the low bits
+    private static int stripe(Object key) {
+        return (key.hashCode() * 0x9E3779B9) >>> (32 - STRIPE_BITS);
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class MyHashMap<K, V> implements Iterable<MyHashMap.Entry<K, V>> {
 
@@ -16,67 +17,104 @@ public class MyHashMap<K, V> implements Iterable<MyHashMap.Entry<K, V>> {
     }
 
     private Entry<K, V>[] table;
-    private int capacity = 16;
+    private int capacity = 16; // always a power of two, so the bucket index is the low bits of the hash
     private int size = 0;
     private static final float LOAD_FACTOR = 0.50f;
 
-    @SuppressWarnings("unchecked")
+    // A chain that reaches TREEIFY_THRESHOLD entries is converted into a balanced tree, so keys with colliding
+    // hash codes cost a logarithmic number of comparisons instead of a linear chain walk.
+    // A tree that shrinks to UNTREEIFY_THRESHOLD entries is converted back into a chain.
+    private static final int TREEIFY_THRESHOLD = 8;
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    // a random seed for every map, so colliding bucket indices can not be precomputed from known hash codes
+    private final int seed = ThreadLocalRandom.current().nextInt();
+
+    // In incremental resize mode the old table is kept while its buckets are moved to the new table
+    // a few at a time, instead of rehashing every entry at once when the map grows.
+    // oldTable is null when no resize is in progress, and its buckets before migrateIndex are already moved.
+    private final boolean incrementalResize;
+    private Entry<K, V>[] oldTable;
+    private int migrateIndex;
+    // the number of old buckets moved by every put and remove, enough to finish before the next resize
+    private static final int MIGRATE_STEP = 4;
+
     public MyHashMap() {
+        this(false);
+    }
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param incrementalResize If true, the entries are moved to the bigger table a few buckets at a time
+     *                          by the following puts and removes, so no single operation pays for the whole resize.
+     */
+    @SuppressWarnings("unchecked")
+    public MyHashMap(boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
         table = new Entry[capacity];
     }
 
     // Inserts a key-value pair into the map
     public V put(K key, V value) {
-        int index = indexFor(hash(key.hashCode()));
-        Entry<K, V> e = table[index];
-
-        // handle collision by separate chaining,
-        // if the bucket is already occupied, add the new entry to the front
-        while (e != null) {
-            // if the key already exists, do not update the value, just return the old value
-            if (e.key.equals(key)) {
-                return e.value;
-            }
-            e = e.next;
+        migrate();
+        int hash = hash(key.hashCode());
+        Entry<K, V> e = findEntry(table, hash, key);
+        if (e == null && oldTable != null) {
+            e = findEntry(oldTable, hash, key);
+        }
+        // if the key already exists, do not update the value, just return the old value
+        if (e != null) {
+            return e.value;
         }
 
-        addEntry(key, value, index);
+        addEntry(table, hash, key, value);
+        size++;
+        if (size >= capacity * LOAD_FACTOR) {
+            resize(2 * capacity);
+        }
         return null;
     }
 
     // Retrieves a value associated with the key from the map
+    // it never moves entries, so the map can be read by many threads while nobody writes to it
     public V get(K key) {
-        int index = indexFor(hash(key.hashCode()));
-        Entry<K, V> e = table[index];
-        while (e != null) {
-            if (e.key.equals(key)) {
-                return e.value;
-            }
-            e = e.next;
+        int hash = hash(key.hashCode());
+        Entry<K, V> e = findEntry(table, hash, key);
+        if (e == null && oldTable != null) {
+            e = findEntry(oldTable, hash, key);
         }
-        return null;
+        return e == null ? null : e.value;
     }
 
     // Removes a key-value pair from the map and returns the value
     public V remove(K key) {
-        int index = indexFor(hash(key.hashCode()));
-        Entry<K, V> prev = null;
-        Entry<K, V> e = table[index];
-        while (e != null) {
-            if (e.key.equals(key)) {
-                if (prev == null) {
-                    table[index] = e.next; // Update the head of the bucket if the match is at the first node
-                } else {
-                    prev.next = e.next; // Skip the matched node
-                }
-                size--;
-                return e.value; // Return the value of the removed node
-            }
-            prev = e;
-            e = e.next;
+        migrate();
+        int hash = hash(key.hashCode());
+        V value = removeEntry(table, hash, key);
+        if (value == null && oldTable != null) {
+            value = removeEntry(oldTable, hash, key);
         }
+        if (value != null) {
+            size--;
+        }
+        return value;
+    }
 
-        return null;
+    // Returns the number of entries in the map
+    public int size() {
+        return size;
+    }
+
+    // Grows the table so that the expected number of entries are added without resizing
+    public void ensureCapacity(int expectedSize) {
+        int newCapacity = capacity;
+        while (expectedSize >= newCapacity * LOAD_FACTOR) {
+            newCapacity *= 2;
+        }
+        if (newCapacity > capacity) {
+            resize(newCapacity);
+        }
     }
 
     // Checks if a key is present in the map or not
@@ -91,58 +129,381 @@ public class MyHashMap<K, V> implements Iterable<MyHashMap.Entry<K, V>> {
 
     // Internal helper methods
 
-    // Adds a new entry to the map at the specified index,
-    // if space is available, otherwise resizes the map
-    private void addEntry(K key, V value, int index) {
-        Entry<K, V> e = table[index];
-        table[index] = new Entry<>(key, value, e);
-        size++;
-        if (size >= capacity * LOAD_FACTOR) {
-            resize(2 * capacity);
+    // Returns the entry with the key in the given table, or null if there is none
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> findEntry(Entry<K, V>[] buckets, int hash, K key) {
+        Entry<K, V> e = buckets[hash & (buckets.length - 1)];
+        if (e instanceof TreeBin) {
+            return ((TreeBin<K, V>) e).find(hash, key);
         }
+        while (e != null) {
+            if (e.key.equals(key)) {
+                return e;
+            }
+            e = e.next;
+        }
+        return null;
     }
 
-    // Resizes the map to the new capacity and rehashes all entries
+    // Adds a new entry to a bucket of the given table, the key must not be in the table
+    @SuppressWarnings("unchecked")
+    private void addEntry(Entry<K, V>[] buckets, int hash, K key, V value) {
+        int index = hash & (buckets.length - 1);
+        Entry<K, V> head = buckets[index];
+        if (head instanceof TreeBin) {
+            ((TreeBin<K, V>) head).insert(hash, key, value);
+            return;
+        }
+        // handle collision by separate chaining, the new entry is added to the front of the bucket
+        buckets[index] = head = new Entry<>(key, value, head);
+        int length = 0;
+        for (Entry<K, V> e = head; e != null; e = e.next) {
+            length++;
+        }
+        if (length >= TREEIFY_THRESHOLD) {
+            TreeBin<K, V> bin = new TreeBin<>();
+            for (Entry<K, V> e = head; e != null; e = e.next) {
+                bin.insert(hash(e.key.hashCode()), e.key, e.value);
+            }
+            buckets[index] = bin;
+        }
+    }
+
+    // Removes the entry with the key from a bucket of the given table and returns its value
+    @SuppressWarnings("unchecked")
+    private V removeEntry(Entry<K, V>[] buckets, int hash, K key) {
+        int index = hash & (buckets.length - 1);
+        Entry<K, V> e = buckets[index];
+        if (e instanceof TreeBin) {
+            TreeBin<K, V> bin = (TreeBin<K, V>) e;
+            V value = bin.remove(hash, key);
+            if (bin.count <= UNTREEIFY_THRESHOLD) {
+                Entry<K, V> chain = null;
+                for (TreeNode<K, V> node = bin.first; node != null; node = (TreeNode<K, V>) node.next) {
+                    chain = new Entry<>(node.key, node.value, chain);
+                }
+                buckets[index] = chain;
+            }
+            return value;
+        }
+        Entry<K, V> prev = null;
+        while (e != null) {
+            if (e.key.equals(key)) {
+                if (prev == null) {
+                    buckets[index] = e.next; // Update the head of the bucket if the match is at the first node
+                } else {
+                    prev.next = e.next; // Skip the matched node
+                }
+                return e.value; // Return the value of the removed node
+            }
+            prev = e;
+            e = e.next;
+        }
+        return null;
+    }
+
+    // Resizes the map to the new capacity, in incremental mode the entries are moved later by migrate
     @SuppressWarnings("unchecked")
     private void resize(int newCapacity) {
-        Entry<K, V>[] oldTable = table;
+        // a resize that is still in progress is finished first, only two tables exist at a time
+        while (oldTable != null) {
+            migrateBucket();
+        }
+        oldTable = table;
+        migrateIndex = 0;
         table = new Entry[newCapacity];
         capacity = newCapacity;
-        size = 0;
-        for (Entry<K, V> e : oldTable) {
-            while (e != null) {
-                put(e.key, e.value);
-                e = e.next;
+        if (!incrementalResize) {
+            while (oldTable != null) {
+                migrateBucket();
             }
         }
     }
 
+    // Moves a few buckets of the old table to the new table if a resize is in progress
+    private void migrate() {
+        for (int i = 0; i < MIGRATE_STEP && oldTable != null; i++) {
+            migrateBucket();
+        }
+    }
+
+    // Moves the next bucket of the old table to the new table
+    @SuppressWarnings("unchecked")
+    private void migrateBucket() {
+        Entry<K, V> e = oldTable[migrateIndex];
+        oldTable[migrateIndex] = null;
+        // the entries are added one by one, since the puts made during an incremental resize may already have
+        // filled the buckets of the new table, or turned them into trees, and a bucket decides its own form
+        if (e instanceof TreeBin) {
+            e = ((TreeBin<K, V>) e).first;
+        }
+        for (; e != null; e = e.next) {
+            addEntry(table, hash(e.key.hashCode()), e.key, e.value);
+        }
+        migrateIndex++;
+        if (migrateIndex == oldTable.length) {
+            oldTable = null;
+        }
+    }
+
+    // Mixes all bits of the hash code into the low bits used for the bucket index (the MurmurHash3 finalizer)
     private int hash(int hashCode) {
-        return Math.abs(hashCode * 31); // Spread the hash code using prime multiplier;
+        int h = hashCode ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
 
-    private int indexFor(int hash) {
-        return hash % capacity; // Use modulo to find the correct bucket
+    // A node of a tree bin, the nodes are also linked through next in insertion order for iteration
+    private static final class TreeNode<K, V> extends Entry<K, V> {
+        final int hash;
+        TreeNode<K, V> left;
+        TreeNode<K, V> right;
+        TreeNode<K, V> prev;
+        int height = 1;
+        TreeNode(int hash, K key, V value) {
+            super(key, value, null);
+            this.hash = hash;
+        }
+    }
+
+    // The head of a bucket whose entries are kept in an AVL tree, ordered by hash and then by the keys
+    // themselves if they are comparable to each other. Keys that are not comparable and have the same hash
+    // are ordered by their identity hash codes, and looking them up falls back to walking the list.
+    private static final class TreeBin<K, V> extends Entry<K, V> {
+        TreeNode<K, V> root;
+        TreeNode<K, V> first; // the list of all nodes
+        int count = 0;
+        // set by the recursive helpers
+        private TreeNode<K, V> found;
+
+        TreeBin() {
+            super(null, null, null);
+        }
+
+        // Checks if two keys with the same hash can be ordered by their compareTo method
+        private static boolean comparable(Object key1, Object key2) {
+            return key1 instanceof Comparable && key1.getClass() == key2.getClass();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static int compare(int hash1, Object key1, int hash2, Object key2) {
+            if (hash1 != hash2) {
+                return hash1 < hash2 ? -1 : 1;
+            }
+            if (comparable(key1, key2)) {
+                return ((Comparable) key1).compareTo(key2);
+            }
+            return Integer.compare(System.identityHashCode(key1), System.identityHashCode(key2));
+        }
+
+        TreeNode<K, V> find(int hash, K key) {
+            TreeNode<K, V> node = root;
+            boolean orderedByIdentity = false;
+            while (node != null) {
+                if (node.key.equals(key)) {
+                    return node;
+                }
+                if (node.hash == hash && !comparable(key, node.key)) {
+                    orderedByIdentity = true;
+                }
+                node = compare(hash, key, node.hash, node.key) < 0 ? node.left : node.right;
+            }
+            if (!orderedByIdentity) {
+                return null;
+            }
+            // keys that can not be compared might be anywhere among the nodes with the same hash
+            for (TreeNode<K, V> e = first; e != null; e = (TreeNode<K, V>) e.next) {
+                if (e.hash == hash && e.key.equals(key)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        void insert(int hash, K key, V value) {
+            TreeNode<K, V> node = new TreeNode<>(hash, key, value);
+            root = insert(root, node);
+            node.next = first;
+            if (first != null) {
+                first.prev = node;
+            }
+            first = node;
+            count++;
+        }
+
+        V remove(int hash, K key) {
+            TreeNode<K, V> node = find(hash, key);
+            if (node == null) {
+                return null;
+            }
+            found = null;
+            root = delete(root, node);
+            // unlink the node from the list
+            TreeNode<K, V> next = (TreeNode<K, V>) node.next;
+            if (node.prev == null) {
+                first = next;
+            } else {
+                node.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = node.prev;
+            }
+            count--;
+            return node.value;
+        }
+
+        private TreeNode<K, V> insert(TreeNode<K, V> node, TreeNode<K, V> added) {
+            if (node == null) {
+                return added;
+            }
+            if (compare(added.hash, added.key, node.hash, node.key) < 0) {
+                node.left = insert(node.left, added);
+            } else {
+                node.right = insert(node.right, added);
+            }
+            return balance(node);
+        }
+
+        // Deletes the given node, which is found by its identity since equal hashes may be ordered by identity
+        private TreeNode<K, V> delete(TreeNode<K, V> node, TreeNode<K, V> removed) {
+            if (node == removed) {
+                if (node.left == null) {
+                    return node.right;
+                }
+                if (node.right == null) {
+                    return node.left;
+                }
+                // the smallest node of the right subtree takes the place of the removed node
+                node.right = deleteSmallest(node.right);
+                TreeNode<K, V> successor = found;
+                successor.left = node.left;
+                successor.right = node.right;
+                return balance(successor);
+            }
+            int cmp = compare(removed.hash, removed.key, node.hash, node.key);
+            // nodes that compare as equal may be on both sides after rotations
+            if (cmp < 0 || (cmp == 0 && contains(node.left, removed))) {
+                node.left = delete(node.left, removed);
+            } else {
+                node.right = delete(node.right, removed);
+            }
+            return balance(node);
+        }
+
+        // Checks if the given node is in the subtree
+        private static <K, V> boolean contains(TreeNode<K, V> node, TreeNode<K, V> target) {
+            while (node != null) {
+                if (node == target) {
+                    return true;
+                }
+                int cmp = compare(target.hash, target.key, node.hash, node.key);
+                if (cmp == 0) {
+                    return contains(node.left, target) || contains(node.right, target);
+                }
+                node = cmp < 0 ? node.left : node.right;
+            }
+            return false;
+        }
+
+        private TreeNode<K, V> deleteSmallest(TreeNode<K, V> node) {
+            if (node.left == null) {
+                found = node;
+                return node.right;
+            }
+            node.left = deleteSmallest(node.left);
+            return balance(node);
+        }
+
+        private static int height(TreeNode<?, ?> node) {
+            return node == null ? 0 : node.height;
+        }
+
+        private static void updateHeight(TreeNode<?, ?> node) {
+            node.height = 1 + Math.max(height(node.left), height(node.right));
+        }
+
+        private TreeNode<K, V> balance(TreeNode<K, V> node) {
+            updateHeight(node);
+            int difference = height(node.left) - height(node.right);
+            if (difference > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    node.left = rotateLeft(node.left);
+                }
+                return rotateRight(node);
+            }
+            if (difference < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    node.right = rotateRight(node.right);
+                }
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        private TreeNode<K, V> rotateRight(TreeNode<K, V> node) {
+            TreeNode<K, V> newRoot = node.left;
+            node.left = newRoot.right;
+            newRoot.right = node;
+            updateHeight(node);
+            updateHeight(newRoot);
+            return newRoot;
+        }
+
+        private TreeNode<K, V> rotateLeft(TreeNode<K, V> node) {
+            TreeNode<K, V> newRoot = node.right;
+            node.right = newRoot.left;
+            newRoot.left = node;
+            updateHeight(node);
+            updateHeight(newRoot);
+            return newRoot;
+        }
     }
 
     // Iterator implementation for the HashMap to iterate over the entries
+    // of the old table that are not moved yet, and then of the current table
     private class HashMapIterator implements Iterator<Entry<K, V>> {
-        int index = 0;
+        Entry<K, V>[] buckets;
+        int index;
         Entry<K, V> next;
 
         // Constructor initializes the iterator and moves to the first non-null bucket
         HashMapIterator() {
+            if (oldTable != null) {
+                buckets = oldTable;
+                index = migrateIndex;
+            } else {
+                buckets = table;
+                index = 0;
+            }
             moveToNext();
         }
 
          // Advances the iterator to the next non-null bucket in the hash table.
-         // Sets the `next` reference to the first entry in the next non-empty bucket.
+         // Sets the `next` reference to the first entry in the next non-empty bucket,
+         // which is the first node of the list if the bucket is a tree.
+        @SuppressWarnings("unchecked")
         private void moveToNext() {
-            while (index < table.length) {
-                next = table[index++];
-                if (next != null) {
-                    break; // Exit the loop if a non-null bucket is found
+            next = null;
+            while (true) {
+                while (index < buckets.length) {
+                    next = buckets[index++];
+                    if (next instanceof TreeBin) {
+                        next = ((TreeBin<K, V>) next).first;
+                    }
+                    if (next != null) {
+                        return; // Exit the loop if a non-null bucket is found
+                    }
+                }
+                if (buckets == table) {
+                    return;
                 }
+                // the old table is done, continue with the current table
+                buckets = table;
+                index = 0;
             }
         }
 
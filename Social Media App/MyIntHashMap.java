@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * A map from non-negative int keys, such as interned user and post IDs, to values.
+ * The keys and values are stored in parallel arrays of an open-addressing table with linear probing,
+ * so there is no boxing and no entry object per mapping.
+ *
+ * @param <V> The type of the values.
+ */
+public class MyIntHashMap<V> {
+    private static final int FREE = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private V[] values;
+    private int mask;
+    private int size = 0;
+
+    public MyIntHashMap() {
+        this(8);
+    }
+
+    /**
+     * Constructs a map that can hold the expected number of mappings without resizing.
+     *
+     * @param expectedSize The expected number of mappings.
+     */
+    public MyIntHashMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR <= expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    // Inserts a key-value pair into the map, like MyHashMap an existing value is not replaced but returned
+    public V put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        int index = indexFor(key);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        if (size >= keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    // Retrieves the value associated with the key, or null if there is none
+    public V get(int key) {
+        int index = indexFor(key);
+        int current;
+        while ((current = keys[index]) != FREE) {
+            if (current == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    // Removes a key-value pair from the map and returns the value
+    public V remove(int key) {
+        int index = indexFor(key);
+        int current;
+        while ((current = keys[index]) != FREE) {
+            if (current == key) {
+                V value = values[index];
+                shiftBack(index);
+                size--;
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Internal helper methods
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    // Closes the gap left by a removed key by moving back the mappings of the same probe sequence
+    private void shiftBack(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            int key = keys[index];
+            if (key == FREE) {
+                break;
+            }
+            int home = indexFor(key);
+            // the mapping can move to the gap only if its home slot is not between the gap and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[index];
+                gap = index;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int index = indexFor(oldKeys[i]);
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private int indexFor(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing spreads consecutive IDs over the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of non-negative int keys, such as interned user and post IDs.
+ * The keys are stored directly in an open-addressing table with linear probing,
+ * so there is no boxing and no entry object per element.
+ */
+public class MyIntHashSet {
+    private static final int FREE = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private int mask;
+    private int size = 0;
+
+    public MyIntHashSet() {
+        this(8);
+    }
+
+    /**
+     * Constructs a set that can hold the expected number of elements without resizing.
+     *
+     * @param expectedSize The expected number of elements.
+     */
+    public MyIntHashSet(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR <= expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    // Adds an element to the set, returns false if it was already present
+    public boolean add(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        int index = indexFor(key);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        size++;
+        if (size >= keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    // Removes an element from the set, if it is present returns true
+    public boolean remove(int key) {
+        int index = find(key);
+        if (index < 0) {
+            return false;
+        }
+        shiftBack(index);
+        size--;
+        return true;
+    }
+
+    // Checks if an element is present in the set
+    public boolean contains(int key) {
+        return find(key) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Returns an iterator over the elements, the set must not be changed while iterating
+    public IntIterator iterator() {
+        return new IntIterator();
+    }
+
+    // Internal helper methods
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    // Returns the slot of the key, or -1 if it is not in the set
+    private int find(int key) {
+        int index = indexFor(key);
+        int current;
+        while ((current = keys[index]) != FREE) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Closes the gap left by a removed key by moving back the keys of the same probe sequence
+    private void shiftBack(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            int key = keys[index];
+            if (key == FREE) {
+                break;
+            }
+            int home = indexFor(key);
+            // the key can move to the gap only if its home slot is not between the gap and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = key;
+                gap = index;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        allocate(newCapacity);
+        for (int key : oldKeys) {
+            if (key != FREE) {
+                int index = indexFor(key);
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+
+    private int indexFor(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing spreads consecutive IDs over the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // Iterator over the keys of the set that returns primitive ints
+    public class IntIterator {
+        private int index = -1;
+
+        IntIterator() {
+            moveToNext();
+        }
+
+        private void moveToNext() {
+            index++;
+            while (index < keys.length && keys[index] == FREE) {
+                index++;
+            }
+        }
+
+        public boolean hasNext() {
+            return index < keys.length;
+        }
+
+        public int next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int key = keys[index];
+            moveToNext();
+            return key;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes log lines to a channel as they are produced.
+ *
+ * The parts of a line are encoded as UTF-8 straight into a reusable byte buffer, so no String is built for a message,
+ * and the buffer is written to the channel in large blocks whenever it fills up.
+ * The memory used does not depend on the size of the output.
+ *
+ * A line is written with chained calls, for example {@code out.append(userId).append(" liked ").append(postId).endLine(".")}.
+ *
+ * A writer without a channel keeps its lines in memory and grows its buffer instead of flushing, so commands that run
+ * at the same time can each log into their own writer, and the logs are copied to the output in input order later.
+ */
+public class MyLogWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final WritableByteChannel channel; // null if the lines are kept in memory
+    private byte[] buffer;
+    private int position = 0;
+
+    /**
+     * Constructs a writer over a channel.
+     *
+     * @param channel The channel that receives the encoded lines, it is not closed by the writer.
+     */
+    public MyLogWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructs a writer that keeps its lines in memory until they are copied to another writer.
+     *
+     * @param initialSize The initial size of the buffer in bytes.
+     */
+    public MyLogWriter(int initialSize) {
+        this.channel = null;
+        this.buffer = new byte[Math.max(initialSize, 16)];
+    }
+
+    // Appends a string to the current line
+    public MyLogWriter append(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (position == buffer.length) {
+                    makeRoom(1);
+                }
+                buffer[position++] = (byte) c;
+            } else {
+                i = appendNonAscii(text, i, c);
+            }
+        }
+        return this;
+    }
+
+    // Appends the decimal digits of a number to the current line
+    public MyLogWriter append(int number) {
+        if (position + 11 > buffer.length) {
+            makeRoom(11);
+        }
+        if (number < 0) {
+            if (number == Integer.MIN_VALUE) {
+                return append("-2147483648");
+            }
+            buffer[position++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (int rest = number / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        position += digits;
+        return this;
+    }
+
+    // Appends the last part of a line and ends the line
+    public void endLine(String text) {
+        append(text);
+        endLine();
+    }
+
+    // Ends the current line
+    public void endLine() {
+        if (position + LINE_SEPARATOR.length > buffer.length) {
+            makeRoom(LINE_SEPARATOR.length);
+        }
+        for (byte b : LINE_SEPARATOR) {
+            buffer[position++] = b;
+        }
+    }
+
+    // Writes the buffered bytes to the channel, a writer without a channel keeps them
+    public void flush() {
+        if (channel == null) {
+            return;
+        }
+        ByteBuffer view = ByteBuffer.wrap(buffer, 0, position);
+        try {
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+    }
+
+    /**
+     * Copies the lines kept by this writer to another writer, and empties this writer.
+     *
+     * @param out The writer that receives the lines.
+     */
+    public void writeTo(MyLogWriter out) {
+        int offset = 0;
+        while (offset < position) {
+            if (out.position == out.buffer.length) {
+                out.makeRoom(1);
+            }
+            int length = Math.min(position - offset, out.buffer.length - out.position);
+            System.arraycopy(buffer, offset, out.buffer, out.position, length);
+            out.position += length;
+            offset += length;
+        }
+        position = 0;
+    }
+
+    // Returns the number of bytes kept by the writer
+    public int size() {
+        return position;
+    }
+
+    // Makes room for at least the given number of bytes, by flushing to the channel or by growing the buffer
+    private void makeRoom(int needed) {
+        if (channel != null) {
+            flush();
+            return;
+        }
+        byte[] grown = new byte[Math.max(buffer.length * 2, position + needed)];
+        System.arraycopy(buffer, 0, grown, 0, position);
+        buffer = grown;
+    }
+
+    // Encodes a character outside of ASCII, and returns the index of the last character used
+    private int appendNonAscii(String text, int index, char c) {
+        if (position + 4 > buffer.length) {
+            makeRoom(4);
+        }
+        if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            buffer[position++] = '?'; // a surrogate without its pair can not be encoded, like in the standard encoder
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * A max-heap of (long key, int value) pairs stored in two primitive arrays.
+ *
+ * The keys are compared as plain numbers, so sifting touches only the two arrays and follows no references.
+ * Sifting moves a hole instead of swapping, and is iterative.
+ */
+public class MyLongMaxHeap {
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty heap.
+     *
+     * @param capacity The initial capacity of the heap.
+     */
+    public MyLongMaxHeap(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    // Inserts a pair
+    public void insert(long key, int value) {
+        if (size == keys.length) {
+            int capacity = Math.max(size * 2, 4);
+            long[] newKeys = new long[capacity];
+            int[] newValues = new int[capacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        int index = size++;
+        // move the hole up while its parent is smaller than the key
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[parent] >= key) {
+                break;
+            }
+            keys[index] = keys[parent];
+            values[index] = values[parent];
+            index = parent;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    // Returns the largest key, the heap must not be empty
+    public long maxKey() {
+        return keys[0];
+    }
+
+    // Returns the value of the largest key, the heap must not be empty
+    public int maxValue() {
+        return values[0];
+    }
+
+    /**
+     * Removes the pair with the largest key.
+     *
+     * @return The value of the removed pair.
+     * @throws IllegalStateException If the heap is empty.
+     */
+    public int removeMax() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        int max = values[0];
+        size--;
+        if (size > 0) {
+            siftDown(0, keys[size], values[size]);
+        }
+        return max;
+    }
+
+    // Replaces the pair with the largest key by a new pair, with a single sift instead of a remove and an insert
+    public void replaceMax(long key, int value) {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        siftDown(0, key, value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Places a pair at a hole, moving the hole down while a child has a larger key
+    private void siftDown(int index, long key, int value) {
+        int half = size >>> 1; // the indexes from half on have no children
+        while (index < half) {
+            int child = 2 * index + 1;
+            long childKey = keys[child];
+            int right = child + 1;
+            if (right < size && keys[right] > childKey) {
+                child = right;
+                childKey = keys[right];
+            }
+            if (key >= childKey) {
+                break;
+            }
+            keys[index] = childKey;
+            values[index] = values[child];
+            index = child;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * A table of named objects, such as the users or the posts of the network, where every name is interned
+ * to a dense int ID when it is first added.
+ *
+ * Commands refer to users and posts by their string IDs, so the table keeps a {@link MyConcurrentHashMap} from the names.
+ * Everything else refers to them by their dense int IDs, which index an array of fixed-size chunks
+ * without hashing a string. IDs start from 0 and are never reused, since nothing is ever removed.
+ *
+ * Any number of threads can use the table at the same time. Objects are added one at a time, and an object
+ * is stored under its ID before its name is published, so a thread that found a name can always resolve its ID.
+ * The chunks never move, only the directory of chunks is replaced when it fills up.
+ *
+ * @param <V> The type of the named objects.
+ */
+public class MySymbolTable<V> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final MyConcurrentHashMap<String, V> byName = new MyConcurrentHashMap<>(Settings.incrementalResize);
+    private volatile Object[][] chunks = new Object[16][];
+    private volatile int nextId = 0;
+
+    // Returns the ID that will be given to the next added object
+    public int nextId() {
+        return nextId;
+    }
+
+    /**
+     * Adds an object with a new name to the table.
+     *
+     * @param name The name of the object.
+     * @param value The object, created with the ID returned by {@link #nextId()}.
+     * @return The ID of the object.
+     * @throws IllegalArgumentException If the name is already in the table.
+     */
+    public synchronized int put(String name, V value) {
+        if (byName.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate name: " + name);
+        }
+        int id = nextId;
+        Object[][] directory = chunks;
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk == directory.length) {
+            Object[][] grown = new Object[directory.length * 2][];
+            System.arraycopy(directory, 0, grown, 0, directory.length);
+            directory = grown;
+        }
+        if (directory[chunk] == null) {
+            directory[chunk] = new Object[CHUNK_SIZE];
+        }
+        directory[chunk][id & (CHUNK_SIZE - 1)] = value;
+        chunks = directory;
+        nextId = id + 1;
+        byName.put(name, value);
+        return id;
+    }
+
+    // Grows the table so that the expected number of objects are added without resizing
+    public synchronized void ensureCapacity(int expectedSize) {
+        int chunkCount = (expectedSize + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        Object[][] directory = chunks;
+        if (chunkCount > directory.length) {
+            Object[][] grown = new Object[Integer.highestOneBit(chunkCount - 1) << 1][];
+            System.arraycopy(directory, 0, grown, 0, directory.length);
+            chunks = grown;
+        }
+        byName.ensureCapacity(expectedSize);
+    }
+
+    // Retrieves the object with the given name, or null if there is none
+    public V get(String name) {
+        return byName.get(name);
+    }
+
+    // Retrieves the object with the given interned ID, or null if there is none
+    @SuppressWarnings("unchecked")
+    public V get(int id) {
+        if (id < 0 || id >= nextId) {
+            return null;
+        }
+        return (V) chunks[id >>> CHUNK_BITS][id & (CHUNK_SIZE - 1)];
+    }
+
+    public boolean containsKey(String name) {
+        return byName.containsKey(name);
+    }
+
+    public int size() {
+        return nextId;
+    }
+}
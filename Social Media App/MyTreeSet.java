@@ -0,0 +1,281 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set implemented as an AVL tree.
+ * Elements are ordered by their {@code compareTo} method, and iteration goes from the largest element to the smallest.
+ *
+ * An element must be removed before a field used by its {@code compareTo} changes and added back afterwards,
+ * otherwise it can not be found in the tree anymore.
+ *
+ * @param <E> The type of elements in the set, which must implement {@code Comparable<E>}.
+ */
+public class MyTreeSet<E extends Comparable<E>> implements Iterable<E> {
+
+    // Node class representing an element in the tree
+    private static class Node<E> {
+        E value;
+        Node<E> left;
+        Node<E> right;
+        int height = 1;
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private Node<E> root;
+    private int size = 0;
+    // the number of added and removed elements, so a reader can tell that the set changed since it last looked
+    private int changes = 0;
+    // set by the recursive helpers to tell whether the tree was modified
+    private boolean modified;
+
+    /**
+     * Adds an element to the set.
+     *
+     * @param value The element to add.
+     * @return true if the element was added, false if it was already present.
+     */
+    public boolean add(E value) {
+        modified = false;
+        root = insert(root, value);
+        if (modified) {
+            size++;
+            changes++;
+        }
+        return modified;
+    }
+
+    /**
+     * Removes an element from the set.
+     *
+     * @param value The element to remove.
+     * @return true if the element was present and removed, false otherwise.
+     */
+    public boolean remove(E value) {
+        modified = false;
+        root = delete(root, value);
+        if (modified) {
+            size--;
+            changes++;
+        }
+        return modified;
+    }
+
+    // Checks if an element is present in the set or not
+    public boolean contains(E value) {
+        Node<E> node = root;
+        while (node != null) {
+            int cmp = value.compareTo(node.value);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the largest element of the set.
+     *
+     * @return The largest element, or null if the set is empty.
+     */
+    public E last() {
+        Node<E> node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns the largest element that is strictly smaller than the given element.
+     *
+     * @param value The element to compare with, it does not have to be in the set.
+     * @return The largest smaller element, or null if there is no such element.
+     */
+    public E lower(E value) {
+        Node<E> node = root;
+        E result = null;
+        while (node != null) {
+            if (node.value.compareTo(value) < 0) {
+                result = node.value;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the number of elements added or removed since the set was created
+    public int changes() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Returns an iterator over the elements from the largest to the smallest
+    public Iterator<E> iterator() {
+        return new DescendingIterator();
+    }
+
+    // Returns an iterator over the elements strictly smaller than the given element, from the largest to the smallest
+    public Iterator<E> iteratorBelow(E value) {
+        return new DescendingIterator(value);
+    }
+
+    // Internal helper methods
+
+    private Node<E> insert(Node<E> node, E value) {
+        if (node == null) {
+            modified = true;
+            return new Node<>(value);
+        }
+        int cmp = value.compareTo(node.value);
+        if (cmp < 0) {
+            node.left = insert(node.left, value);
+        } else if (cmp > 0) {
+            node.right = insert(node.right, value);
+        } else {
+            return node; // the element is already in the set
+        }
+        return balance(node);
+    }
+
+    private Node<E> delete(Node<E> node, E value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = value.compareTo(node.value);
+        if (cmp < 0) {
+            node.left = delete(node.left, value);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            modified = true;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // replace the node with the smallest element of its right subtree
+            Node<E> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.value = successor.value;
+            node.right = deleteSmallest(node.right);
+        }
+        return balance(node);
+    }
+
+    private Node<E> deleteSmallest(Node<E> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteSmallest(node.left);
+        return balance(node);
+    }
+
+    private int height(Node<E> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private void updateHeight(Node<E> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    // Restores the AVL property of the node with at most two rotations
+    private Node<E> balance(Node<E> node) {
+        updateHeight(node);
+        int difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (difference < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<E> rotateRight(Node<E> node) {
+        Node<E> newRoot = node.left;
+        node.left = newRoot.right;
+        newRoot.right = node;
+        updateHeight(node);
+        updateHeight(newRoot);
+        return newRoot;
+    }
+
+    private Node<E> rotateLeft(Node<E> node) {
+        Node<E> newRoot = node.right;
+        node.right = newRoot.left;
+        newRoot.left = node;
+        updateHeight(node);
+        updateHeight(newRoot);
+        return newRoot;
+    }
+
+    // Iterator implementation that walks the tree in reverse order using an explicit stack
+    private class DescendingIterator implements Iterator<E> {
+        // the height of an AVL tree is at most 1.44 * log2(n), so 64 levels are always enough
+        @SuppressWarnings("unchecked")
+        private final Node<E>[] stack = (Node<E>[]) new Node<?>[64];
+        private int top = 0;
+
+        DescendingIterator() {
+            pushRightPath(root);
+        }
+
+        // Starts below a bound by pushing the nodes on the search path that are smaller than it,
+        // each of them is followed by its left subtree like in pushRightPath
+        DescendingIterator(E bound) {
+            Node<E> node = root;
+            while (node != null) {
+                if (node.value.compareTo(bound) < 0) {
+                    stack[top++] = node;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+        }
+
+        // Pushes the node and all of its right descendants onto the stack
+        private void pushRightPath(Node<E> node) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.right;
+            }
+        }
+
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Node<E> node = stack[--top];
+            pushRightPath(node.left);
+            return node.value;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the commands of an input on several threads, enabled with the {@code --threads=<n>} option,
+ * while producing exactly the log of running them one by one.
+ *
+ * The commands are read in batches. Every command of a batch is given a level as it is read, from the users
+ * whose state it reads or writes: a command is placed after the last command that writes a user it uses,
+ * and a command that writes a user is also placed after the last command that reads it. The state of a post,
+ * its likes and likers, belongs to its author. The commands of one level touch disjoint state,
+ * so the levels are run in order and the commands of each level at the same time.
+ *
+ * Commands that change the users or posts tables, and in push and hybrid feed modes the commands that fan out
+ * to the feeds of many users, are barriers: they run alone, after every earlier command and before every later one.
+ * Users and posts created earlier in a batch are tracked while the batch is scheduled, so that the commands
+ * using them get the right levels before they exist.
+ *
+ * Every command logs into its own in-memory writer, and the logs are copied to the output in input order
+ * when the batch has run.
+ */
+public class ParallelCommandRunner {
+    private static final int BATCH_SIZE = 4096;
+    private static final int INLINE_LIMIT = 4; // smaller levels run on the reading thread
+    private static final int GRAIN = 8; // the number of commands a task runs without splitting
+
+    private final SocialNetwork network;
+    private final ForkJoinPool pool;
+    private final MyCommandParser[] commands = new MyCommandParser[BATCH_SIZE];
+    private final MyLogWriter[] logs = new MyLogWriter[BATCH_SIZE];
+    private final int[] levels = new int[BATCH_SIZE];
+    private final int[] order = new int[BATCH_SIZE];
+    private final int[] levelStarts = new int[BATCH_SIZE + 1];
+
+    // the last levels that wrote and read each user in the batch, valid only where the stamp is the batch number
+    private int[] lastWrite = new int[64];
+    private int[] lastRead = new int[64];
+    private int[] stamps = new int[64];
+    private int batch = 0;
+    private int floor; // the first level after the last barrier
+    private int maxLevel;
+
+    // the users, posts and follows created by the commands already scheduled in the batch
+    private MyHashMap<String, Integer> pendingUsers;
+    private MyHashMap<String, Integer> pendingPosts; // the post IDs with the indices of their authors
+    private MyIntHashMap<MyIntHashSet> pendingFollows;
+    private int createdUsers;
+
+    // the users a command uses, and whether it writes them
+    private int[] footprint = new int[16];
+    private boolean[] writes = new boolean[16];
+    private int footprintSize;
+
+    /**
+     * Constructs a runner.
+     *
+     * @param network The social network that runs the commands.
+     * @param threads The number of threads that run commands at the same time.
+     */
+    public ParallelCommandRunner(SocialNetwork network, int threads) {
+        this.network = network;
+        this.pool = new ForkJoinPool(threads);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            logs[i] = new MyLogWriter(64);
+        }
+    }
+
+    /**
+     * Runs all the commands of a parser and writes their log.
+     *
+     * @param parser The parser of the input.
+     * @param out The writer of the log.
+     * @throws IOException If the input can not be read.
+     */
+    public void run(MyCommandParser parser, MyLogWriter out) throws IOException {
+        try {
+            boolean more = true;
+            while (more) {
+                startBatch();
+                int count = 0;
+                while (count < BATCH_SIZE && (more = parser.next())) {
+                    commands[count] = parser.copyLine();
+                    levels[count] = schedule(commands[count]);
+                    count++;
+                    if (commands[count - 1].opcode() == CommandTable.LOAD_SNAPSHOT) {
+                        // the users and posts it loads are not known while scheduling, so the batch ends with it
+                        break;
+                    }
+                }
+                runBatch(count);
+                for (int i = 0; i < count; i++) {
+                    logs[i].writeTo(out);
+                    commands[i] = null;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void startBatch() {
+        batch++;
+        floor = 0;
+        maxLevel = -1;
+        pendingUsers = null;
+        pendingPosts = null;
+        pendingFollows = null;
+        createdUsers = 0;
+    }
+
+    // Returns the level of a command, and records the users and posts it creates
+    private int schedule(MyCommandParser command) {
+        boolean pull = Settings.feedMode == Settings.FeedMode.PULL;
+        footprintSize = 0;
+        switch (command.opcode()) {
+            case CommandTable.CREATE_USER:
+                if (command.argCount() >= 1) {
+                    String userId = command.restFrom(0);
+                    if (userIndex(userId) < 0) {
+                        pendingUsers().put(userId, network.nextUserIndex() + createdUsers++);
+                    }
+                }
+                return barrier();
+            case CommandTable.CREATE_POST:
+                if (command.argCount() >= 3) {
+                    int author = userIndex(command.arg(0));
+                    String postId = command.arg(1);
+                    if (author >= 0 && authorIndex(postId) < 0) {
+                        pendingPosts().put(postId, author);
+                    }
+                }
+                return barrier();
+            case CommandTable.FOLLOW_USER:
+            case CommandTable.UNFOLLOW_USER: {
+                if (!pull || command.argCount() < 2) {
+                    return barrier();
+                }
+                int follower = userIndex(command.arg(0));
+                int followed = userIndex(command.arg(1));
+                if (command.opcode() == CommandTable.FOLLOW_USER && follower >= 0 && followed >= 0) {
+                    // unfollows are not tracked, the followed users of a feed only need to include the real ones
+                    pendingFollows(follower).add(followed);
+                }
+                use(follower, true);
+                use(followed, true);
+                return level();
+            }
+            case CommandTable.TOGGLE_LIKE:
+                if (!pull || command.argCount() < 2) {
+                    return barrier();
+                }
+                use(userIndex(command.arg(0)), true);
+                use(authorIndex(command.arg(1)), true);
+                return level();
+            case CommandTable.SEE_POST:
+                if (command.argCount() < 2) {
+                    return barrier();
+                }
+                use(userIndex(command.arg(0)), true);
+                return level();
+            case CommandTable.SEE_ALL_POSTS_FROM_USER:
+                if (command.argCount() < 2) {
+                    return barrier();
+                }
+                use(userIndex(command.arg(0)), true);
+                use(userIndex(command.arg(1)), false);
+                return level();
+            case CommandTable.GENERATE_FEED:
+                if (command.argCount() < 2) {
+                    return barrier();
+                }
+                useFeed(command.arg(0), false);
+                return level();
+            case CommandTable.RECOMMEND_FOLLOWS:
+                if (command.argCount() < 2) {
+                    return barrier();
+                }
+                // reads the users followed by the followed users, which the feed footprint read locks
+                useFeed(command.arg(0), false);
+                return level();
+            case CommandTable.SCROLL_THROUGH_FEED:
+                if (!pull || command.argCount() < 2) {
+                    return barrier();
+                }
+                useFeed(command.arg(0), true);
+                return level();
+            case CommandTable.SORT_POSTS:
+                if (command.argCount() < 1) {
+                    return barrier();
+                }
+                use(userIndex(command.restFrom(0)), false);
+                return level();
+            default:
+                return barrier();
+        }
+    }
+
+    // Adds a user and the users it follows, or will follow by then, to the footprint
+    private void useFeed(String userId, boolean write) {
+        int index = userIndex(userId);
+        if (index < 0) {
+            return;
+        }
+        use(index, write);
+        User user = network.getUser(userId);
+        if (user != null) {
+            for (MyIntHashSet.IntIterator it = user.following.iterator(); it.hasNext(); ) {
+                use(it.next(), write);
+            }
+        }
+        MyIntHashSet followed = pendingFollows == null ? null : pendingFollows.get(index);
+        if (followed != null) {
+            for (MyIntHashSet.IntIterator it = followed.iterator(); it.hasNext(); ) {
+                use(it.next(), write);
+            }
+        }
+    }
+
+    // Adds a user to the footprint of the command, users that do not exist are skipped
+    private void use(int index, boolean write) {
+        if (index < 0) {
+            return;
+        }
+        if (footprintSize == footprint.length) {
+            int[] grownFootprint = new int[footprintSize * 2];
+            boolean[] grownWrites = new boolean[footprintSize * 2];
+            System.arraycopy(footprint, 0, grownFootprint, 0, footprintSize);
+            System.arraycopy(writes, 0, grownWrites, 0, footprintSize);
+            footprint = grownFootprint;
+            writes = grownWrites;
+        }
+        footprint[footprintSize] = index;
+        writes[footprintSize] = write;
+        footprintSize++;
+    }
+
+    // Returns the first level after the commands the footprint depends on, and records the footprint at that level
+    private int level() {
+        int level = floor;
+        for (int i = 0; i < footprintSize; i++) {
+            int index = footprint[i];
+            if (index < stamps.length && stamps[index] == batch) {
+                int last = writes[i] ? Math.max(lastWrite[index], lastRead[index]) : lastWrite[index];
+                level = Math.max(level, last + 1);
+            }
+        }
+        for (int i = 0; i < footprintSize; i++) {
+            int index = footprint[i];
+            ensureCapacity(index);
+            if (stamps[index] != batch) {
+                stamps[index] = batch;
+                lastWrite[index] = -1;
+                lastRead[index] = -1;
+            }
+            if (writes[i]) {
+                lastWrite[index] = level;
+            } else {
+                lastRead[index] = Math.max(lastRead[index], level);
+            }
+        }
+        maxLevel = Math.max(maxLevel, level);
+        return level;
+    }
+
+    // Returns a level of its own after every scheduled command
+    private int barrier() {
+        int level = maxLevel + 1;
+        floor = level + 1;
+        maxLevel = level;
+        return level;
+    }
+
+    private void ensureCapacity(int index) {
+        if (index < stamps.length) {
+            return;
+        }
+        int capacity = Math.max(index + 1, stamps.length * 2);
+        int[] grownWrite = new int[capacity];
+        int[] grownRead = new int[capacity];
+        int[] grownStamps = new int[capacity];
+        System.arraycopy(lastWrite, 0, grownWrite, 0, lastWrite.length);
+        System.arraycopy(lastRead, 0, grownRead, 0, lastRead.length);
+        System.arraycopy(stamps, 0, grownStamps, 0, stamps.length);
+        lastWrite = grownWrite;
+        lastRead = grownRead;
+        stamps = grownStamps;
+    }
+
+    // Returns the index of a user that exists or is created earlier in the batch, or -1
+    private int userIndex(String userId) {
+        User user = network.getUser(userId);
+        if (user != null) {
+            return user.index;
+        }
+        Integer pending = pendingUsers == null ? null : pendingUsers.get(userId);
+        return pending == null ? -1 : pending;
+    }
+
+    // Returns the index of the author of a post that exists or is created earlier in the batch, or -1
+    private int authorIndex(String postId) {
+        Post post = network.getPost(postId);
+        if (post != null) {
+            return post.authorIndex;
+        }
+        Integer pending = pendingPosts == null ? null : pendingPosts.get(postId);
+        return pending == null ? -1 : pending;
+    }
+
+    private MyHashMap<String, Integer> pendingUsers() {
+        if (pendingUsers == null) {
+            pendingUsers = new MyHashMap<>();
+        }
+        return pendingUsers;
+    }
+
+    private MyHashMap<String, Integer> pendingPosts() {
+        if (pendingPosts == null) {
+            pendingPosts = new MyHashMap<>();
+        }
+        return pendingPosts;
+    }
+
+    private MyIntHashSet pendingFollows(int follower) {
+        if (pendingFollows == null) {
+            pendingFollows = new MyIntHashMap<>();
+        }
+        MyIntHashSet followed = pendingFollows.get(follower);
+        if (followed == null) {
+            followed = new MyIntHashSet();
+            pendingFollows.put(follower, followed);
+        }
+        return followed;
+    }
+
+    // Runs the commands of a batch level by level
+    private void runBatch(int count) {
+        int levelCount = maxLevel + 1;
+        // the commands are sorted by level with a counting sort, keeping the input order within a level
+        Arrays.fill(levelStarts, 0, levelCount + 1, 0);
+        for (int i = 0; i < count; i++) {
+            levelStarts[levels[i] + 1]++;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            levelStarts[level + 1] += levelStarts[level];
+        }
+        int[] next = new int[levelCount];
+        System.arraycopy(levelStarts, 0, next, 0, levelCount);
+        for (int i = 0; i < count; i++) {
+            order[next[levels[i]]++] = i;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            int start = levelStarts[level];
+            int end = levelStarts[level + 1];
+            if (end - start < INLINE_LIMIT) {
+                for (int i = start; i < end; i++) {
+                    runCommand(order[i]);
+                }
+            } else {
+                pool.invoke(new LevelTask(start, end));
+            }
+        }
+    }
+
+    private void runCommand(int i) {
+        InputOutputOperations.execute(commands[i], network, logs[i]);
+    }
+
+    // Runs the commands of a level between two positions of the order, splitting them between the threads
+    private class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        LevelTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= GRAIN) {
+                for (int i = start; i < end; i++) {
+                    runCommand(order[i]);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new LevelTask(start, middle), new LevelTask(middle, end));
+        }
+    }
+}
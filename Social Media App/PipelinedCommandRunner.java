@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Runs the commands of an input one by one in three stages that work at the same time, enabled with the
+ * {@code --pipeline=true} option. A reader thread reads and tokenizes the lines, the calling thread runs the
+ * commands, and a writer thread writes their log to the output, so reading the input and writing the output
+ * overlap with running the commands.
+ *
+ * The reader hands the tokenized commands to the executor in blocks through a {@link MyBlockingRing}.
+ * The executor logs into a {@link MyLogWriter} whose full buffers are copied into chunks of a fixed pool and handed
+ * to the writer through a second ring. Both rings are bounded, so a stage that runs ahead waits for the next one,
+ * and the memory used does not depend on the size of the input.
+ *
+ * The commands run in input order on a single thread, so the log is the same as running them without the pipeline.
+ * Every stage counts the items it handled, and the time it was busy and waited, see {@link #report(PrintStream)}.
+ */
+public class PipelinedCommandRunner {
+    private static final int BLOCK_SIZE = 1024; // the commands handed to the executor at once
+    private static final int COMMAND_BLOCKS = 64; // the blocks the reader may read ahead
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int LOG_CHUNKS = 16; // the chunks of the log that may wait for the writer
+
+    // The counters of one stage, each is changed only by the thread of its stage
+    private static final class Stage {
+        final String name;
+        final String unit;
+        long items = 0;
+        long startNanos;
+        long endNanos;
+
+        Stage(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+    }
+
+    private final SocialNetwork network;
+    private final MyBlockingRing<MyCommandParser[]> commands = new MyBlockingRing<>(COMMAND_BLOCKS);
+    private final MyBlockingRing<ByteBuffer> chunks = new MyBlockingRing<>(LOG_CHUNKS);
+    private final MyBlockingRing<ByteBuffer> freeChunks = new MyBlockingRing<>(LOG_CHUNKS);
+    private final Stage parse = new Stage("parse", "commands");
+    private final Stage execute = new Stage("execute", "commands");
+    private final Stage write = new Stage("write", "bytes");
+    private volatile Throwable failure; // the first error of the reader or the writer
+
+    /**
+     * Constructs a runner.
+     *
+     * @param network The social network that runs the commands.
+     */
+    public PipelinedCommandRunner(SocialNetwork network) {
+        this.network = network;
+    }
+
+    /**
+     * Runs all the commands of a parser and writes their log.
+     *
+     * @param parser The parser of the input, it is used only by the reader thread.
+     * @param out The channel of the output, it is not closed.
+     * @throws IOException If the input can not be read or the output can not be written.
+     * @throws InterruptedException If the thread is interrupted while waiting for the other stages.
+     */
+    public void run(MyCommandParser parser, WritableByteChannel out) throws IOException, InterruptedException {
+        for (int i = 0; i < LOG_CHUNKS; i++) {
+            freeChunks.put(ByteBuffer.allocate(CHUNK_SIZE));
+        }
+        Thread reader = new Thread(() -> read(parser), "pipeline-parse");
+        Thread writer = new Thread(() -> write(out), "pipeline-write");
+        reader.start();
+        writer.start();
+        try {
+            execute();
+        } finally {
+            // stops the reader if the commands did not all run, and lets the writer end once the log is written
+            commands.close();
+            chunks.close();
+            reader.join();
+            writer.join();
+        }
+        Throwable error = failure;
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    // The reader stage: tokenizes the lines and hands copies of them to the executor in blocks
+    private void read(MyCommandParser parser) {
+        parse.startNanos = System.nanoTime();
+        try {
+            boolean more = true;
+            while (more) {
+                MyCommandParser[] block = new MyCommandParser[BLOCK_SIZE];
+                int count = 0;
+                while (count < BLOCK_SIZE && (more = parser.next())) {
+                    block[count++] = parser.copyLine();
+                }
+                parse.items += count;
+                // a block that is not full ends with null
+                if (count > 0 && !commands.put(block)) {
+                    return; // the executor stopped
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            commands.close();
+            parse.endNanos = System.nanoTime();
+        }
+    }
+
+    // The executor stage: runs the commands in input order on the calling thread
+    private void execute() throws InterruptedException {
+        execute.startNanos = System.nanoTime();
+        MyLogWriter log = new MyLogWriter(new ChunkChannel());
+        MyCommandParser[] block;
+        while ((block = commands.take()) != null) {
+            for (MyCommandParser command : block) {
+                if (command == null) {
+                    break;
+                }
+                InputOutputOperations.execute(command, network, log);
+                execute.items++;
+            }
+        }
+        log.flush();
+        execute.endNanos = System.nanoTime();
+    }
+
+    // The writer stage: writes the chunks of the log to the output and returns them to the pool
+    private void write(WritableByteChannel out) {
+        write.startNanos = System.nanoTime();
+        try {
+            ByteBuffer chunk;
+            while ((chunk = chunks.take()) != null) {
+                write.items += chunk.remaining();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                chunk.clear();
+                freeChunks.put(chunk);
+            }
+        } catch (Throwable e) {
+            failure = e;
+            // the executor can not hand over more chunks
+            chunks.close();
+            freeChunks.close();
+        } finally {
+            write.endNanos = System.nanoTime();
+        }
+    }
+
+    // The channel of the executor's log writer, which copies every flushed buffer into a free chunk for the writer
+    private final class ChunkChannel implements WritableByteChannel {
+        public int write(ByteBuffer source) throws IOException {
+            int written = source.remaining();
+            while (source.hasRemaining()) {
+                ByteBuffer chunk;
+                try {
+                    chunk = freeChunks.take();
+                    if (chunk != null) {
+                        int length = Math.min(chunk.remaining(), source.remaining());
+                        chunk.put(source.slice().limit(length)).flip();
+                        source.position(source.position() + length);
+                        if (chunks.put(chunk)) {
+                            continue;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing the log", e);
+                }
+                throw new IOException("The writer stage stopped", failure);
+            }
+            return written;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * Writes the counters of every stage: the items it handled, the time it was busy and the rate while busy,
+     * and the time it waited for the stage before or after it. Must be called after {@link #run}.
+     *
+     * @param out The stream to write the report to.
+     */
+    public void report(PrintStream out) {
+        reportStage(out, parse, commands.putWaitNanos());
+        reportStage(out, execute, commands.takeWaitNanos() + freeChunks.takeWaitNanos() + chunks.putWaitNanos());
+        reportStage(out, write, chunks.takeWaitNanos());
+    }
+
+    private static void reportStage(PrintStream out, Stage stage, long waitNanos) {
+        long busyNanos = Math.max(1, stage.endNanos - stage.startNanos - waitNanos);
+        out.println(String.format("pipeline %s: %d %s, busy %d ms (%.0f %s per second), waited %d ms",
+                stage.name, stage.items, stage.unit, busyNanos / 1_000_000,
+                stage.items * 1e9 / busyNanos, stage.unit, waitNanos / 1_000_000));
+    }
+}
@@ -1,29 +1,64 @@
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class Post implements Comparable<Post> {
+    private static final AtomicIntegerFieldUpdater<Post> LIKES = AtomicIntegerFieldUpdater.newUpdater(Post.class, "likes");
+
+    int index; // interned ID of the post
     String postId;
+    int authorIndex; // interned ID of the author
     String authorId;
-    String content;
-    int likes = 0;
+    // the content is kept outside of the heap, since only snapshots and the write-ahead log read it
+    private final MyByteArena contents;
+    private final long contentOffset;
+    private final int contentLength;
+    // changed atomically, so it can be read by any thread without a lock
+    volatile int likes = 0;
+    // unsigned rank of the post ID among all posts, and the neighbours of the post in ID order, kept by PostOrder
+    int label;
+    Post previousById;
+    Post nextById;
 
-    // Set of people who liked the post
-    MyHashSet<String> peopleLikedPost = new MyHashSet<>();
+    // Set of the interned IDs of people who liked the post, as a compressed bitmap, guarded by the post's lock
+    MyBitmapSet peopleLikedPost = new MyBitmapSet();
 
-    Post(String postId, String authorId, String content) {
+    Post(int index, String postId, int authorIndex, String authorId, MyByteArena contents, byte[] content) {
+        this.index = index;
         this.postId = postId;
+        this.authorIndex = authorIndex;
         this.authorId = authorId;
-        this.content = content;
+        this.contents = contents;
+        this.contentOffset = contents.append(content);
+        this.contentLength = content.length;
+    }
+    // Returns the content of the post, decoded from the arena on every call
+    public String content() {
+        return contents.string(contentOffset, contentLength);
+    }
+    // Returns the content of the post as UTF-8 bytes
+    byte[] contentBytes() {
+        return contents.bytes(contentOffset, contentLength);
+    }
+    // Likes the post for the user if the user has not liked it, otherwise unlikes it, and returns true if it is liked.
+    // The likers and the like count change together under the post's lock, so they always agree
+    synchronized boolean toggleLiker(int userIndex) {
+        if (peopleLikedPost.remove(userIndex)) {
+            LIKES.decrementAndGet(this);
+            return false;
+        }
+        peopleLikedPost.add(userIndex);
+        LIKES.incrementAndGet(this);
+        return true;
+    }
+    // Returns the likes in the high bits and the label of the post ID in the low bits,
+    // so posts with more likes, and then with larger IDs, have larger keys
+    long sortKey() {
+        return ((long) likes << 32) | (label & 0xFFFFFFFFL);
     }
     // Overriding the compareTo method to compare posts,
     // first by likes descending, then by postId descending
     @Override
     public int compareTo(Post other) {
-        // First compare by likes
-        if (this.likes > other.likes) {
-            return 1;
-        } else if (this.likes < other.likes) {
-            return -1;
-        }
-        // If likes are equal, compare by postId
-        return this.postId.compareTo(other.postId); // Descending order for postId
+        // the sort key orders by likes and then by postId, without comparing the strings
+        return Long.compare(sortKey(), other.sortKey());
     }
 }
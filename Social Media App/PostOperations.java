@@ -1,3 +1,4 @@
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 public class PostOperations {
@@ -5,147 +6,145 @@ public class PostOperations {
     /**
      * Method to create a new post in the network.
      *
-     * @param params A string containing the user ID, post ID, and content of the post, separated by spaces.
-     * @param users A hashmap containing all users in the network.
-     * @param posts A hashmap containing all posts in the network.
+     * @param userId The ID of the user who creates the post.
+     * @param postId The ID of the new post.
+     * @param content The content of the post.
+     * @param users A symbol table containing all users in the network.
+     * @param posts A symbol table containing all posts in the network.
+     * @param order The order of all post IDs, which labels the new post.
+     * @param contents The arena that keeps the contents of the posts.
+     * @return The created post, or null if the user does not exist, the post ID already exists, or the network
+     *         holds as many posts as the order can label.
      *
-     * Logs an error if the user does not exist or if the post ID already exists.
      * Adds the post to the user's post list and the global post network if successful.
      */
-    public static void createPost(String params, MyHashMap<String, User> users, MyHashMap<String, Post> posts) {
-        // split the input string into parts:
-        // the first part is the user who created the post
-        // the second part is the post ID
-        // the third part is the content of the post
-        String[] parts = params.split(" ", 3);
-
-        // if the user does not exist in the network or the post already exists, log an error
-        if (!users.containsKey(parts[0]) || posts.containsKey(parts[1])) {
-            InputOutputOperations.logError("create_post");
-            return;
+    public static Post createPost(String userId, String postId, String content, MySymbolTable<User> users, MySymbolTable<Post> posts,
+                                  PostOrder order, MyByteArena contents) {
+        // if the user does not exist in the network, the post already exists or no label is left for it, it is an error
+        if (!users.containsKey(userId) || posts.containsKey(postId) || order.isFull()) {
+            return null;
         }
-        String userId = parts[0];
-        String postId = parts[1];
-        String content = parts[2];
-        Post post = new Post(postId, userId, content);
+        User author = users.get(userId);
+        Post post = new Post(posts.nextId(), postId, author.index, userId, contents, content.getBytes(StandardCharsets.UTF_8));
 
+        // the post is labeled before it is published or put in any ordered set
+        order.add(post);
         // added the post to the whole post network and the user's post list
         posts.put(postId, post);
-        users.get(userId).posts.add(post);
-        InputOutputOperations.log(userId + " created a post with Id " + postId + ".");
+        author.posts.add(post);
+        author.rankedPosts.add(post);
+        FeedStore.onPostCreated(post, author, users);
+        WriteAheadLog.logCreatePost(author, post);
+        return post;
     }
     /**
      * Marks a post as seen by a user.
      *
-     * @param params A string containing the user ID and post ID, separated by a space.
-     * @param users A hashmap containing all users in the network.
-     * @param posts A hashmap containing all posts in the network.
-     *
-     * Adds the post to the user's seen posts list if successful.
+     * @param userId The ID of the user who sees the post.
+     * @param postId The ID of the post.
+     * @param users A symbol table containing all users in the network.
+     * @param posts A symbol table containing all posts in the network.
+     * @return true if the post is marked as seen, false if the user or the post does not exist.
      */
-    public static void seePost(String params, MyHashMap<String, User> users, MyHashMap<String, Post> posts) {
-        String[] parts = params.split(" ");
-        // if the user or the post does not exist in the network, log an error
-        if (!users.containsKey(parts[0]) || !posts.containsKey(parts[1])) {
-            InputOutputOperations.logError("see_post");
-            return;
+    public static boolean seePost(String userId, String postId, MySymbolTable<User> users, MySymbolTable<Post> posts) {
+        // if the user or the post does not exist in the network, it is an error
+        if (!users.containsKey(userId) || !posts.containsKey(postId)) {
+            return false;
         }
-        User user = users.get(parts[0]);
+        User user = users.get(userId);
+        Post post = posts.get(postId);
         // added the post to the user's seen posts for checks in feed operations
-        user.seenPosts.add(parts[1]);
-        InputOutputOperations.log(parts[0] + " saw " + parts[1] + ".");
+        FeedStore.markSeen(user, post);
+        WriteAheadLog.logSeePost(user, post);
+        return true;
     }
     /**
      * Marks all posts from one user as seen by another user.
      *
-     * @param params A string containing the viewer's user ID and the viewed user's user ID, separated by a space.
-     * @param users A hashmap containing all users in the network.
-     *
-     * Adds all the viewed user's posts to the viewer's seen posts list if successful.
+     * @param viewerId The ID of the user who sees the posts.
+     * @param viewedId The ID of the user whose posts are seen.
+     * @param users A symbol table containing all users in the network.
+     * @return true if the posts are marked as seen, false if one of the users does not exist.
      */
-    public static void seeAllPostsFromUser(String params,MyHashMap<String, User> users) {
-        String[] parts = params.split(" ");
-        // if any of the users do not exist in the network, log an error
-        if (!users.containsKey(parts[0]) || !users.containsKey(parts[1])) {
-            InputOutputOperations.logError("see_all_posts_from_user");
-            return;
+    public static boolean seeAllPostsFromUser(String viewerId, String viewedId, MySymbolTable<User> users) {
+        // if any of the users do not exist in the network, it is an error
+        if (!users.containsKey(viewerId) || !users.containsKey(viewedId)) {
+            return false;
         }
-        User viewer = users.get(parts[0]);
-        User viewed = users.get(parts[1]);
+        User viewer = users.get(viewerId);
+        User viewed = users.get(viewedId);
         for (Post post : viewed.posts) {
             // added all the posts of the user to the viewer's seen posts for checks in feed operations
-            viewer.seenPosts.add(post.postId);
+            FeedStore.markSeen(viewer, post);
         }
-        InputOutputOperations.log(parts[0] + " saw all posts of " + parts[1] + ".");
+        WriteAheadLog.logSeeAllPosts(viewer, viewed);
+        return true;
     }
     /**
      * Toggles the like status of a post by a user.
      *
-     * @param params A string containing the user ID and post ID, separated by a space.
-     * @param isLogged A boolean indicating whether the action should be logged.
-     * @param users A hashmap containing all users in the network.
-     * @param posts A hashmap containing all posts in the network.
-     *
-     * Adds the post to the user's seen posts list if not already seen. Toggles like/unlike status and logs the action if required.
+     * @param userId The ID of the user who likes or unlikes the post.
+     * @param postId The ID of the post.
+     * @param users A symbol table containing all users in the network.
+     * @param posts A symbol table containing all posts in the network.
+     * @return LIKED or UNLIKED for the new like status, or FAILED if the user or the post does not exist.
      */
-    public static void toggleLike(String params, boolean isLogged, MyHashMap<String, User> users, MyHashMap<String, Post> posts) {
-        String[] parts = params.split(" ");
-        // if the user or the post does not exist in the network, log an error
-        if (!users.containsKey(parts[0]) || !posts.containsKey(parts[1])) {
-            InputOutputOperations.logError("toggle_like");
-            return;
+    public static SocialNetwork.LikeResult toggleLike(String userId, String postId, MySymbolTable<User> users, MySymbolTable<Post> posts) {
+        // if the user or the post does not exist in the network, it is an error
+        if (!users.containsKey(userId) || !posts.containsKey(postId)) {
+            return SocialNetwork.LikeResult.FAILED;
         }
-        String userId = parts[0];
-        String postId = parts[1];
-        User user = users.get(userId);
-        Post post = posts.get(postId);
-
+        return toggleLike(users.get(userId), posts.get(postId), users);
+    }
+    /**
+     * Toggles the like status of a post by a user, for callers that already hold both objects.
+     *
+     * @param user The user who likes or unlikes the post.
+     * @param post The post.
+     * @param users A symbol table containing all users in the network.
+     * @return LIKED or UNLIKED for the new like status.
+     *
+     * Adds the post to the user's seen posts list if not already seen.
+     */
+    static SocialNetwork.LikeResult toggleLike(User user, Post post, MySymbolTable<User> users) {
         // liking a post means it is seen by the user so, add to seen posts
-        user.seenPosts.add(postId);
+        FeedStore.markSeen(user, post);
+
+        // the post is taken out of its author's ranked posts while its likes change, and put back afterwards
+        User author = users.get(post.authorIndex);
+        author.rankedPosts.remove(post);
+        FeedStore.beforeLikeChange(post, author, users);
 
         // if the user already liked the post, unlike it, otherwise like it
-        // isLogged is used to prevent logging the action when it is called from scrollThroughFeed
-        if (post.peopleLikedPost.contains(userId)) {
-            post.peopleLikedPost.remove(userId);
-            post.likes--;
-            if (isLogged) {
-                InputOutputOperations.log(userId + " unliked " + postId + ".");
-            }
-        } else {
-            post.peopleLikedPost.add(userId);
-            post.likes++;
-            if (isLogged) {
-                InputOutputOperations.log(userId + " liked " + postId + ".");
-            }
-        }
+        SocialNetwork.LikeResult result = post.toggleLiker(user.index)
+                ? SocialNetwork.LikeResult.LIKED : SocialNetwork.LikeResult.UNLIKED;
+        author.rankedPosts.add(post);
+        FeedStore.afterLikeChange(post, author, users);
+        WriteAheadLog.logToggleLike(user, post);
+        return result;
     }
     /**
-     * Sorts a user's posts by the number of likes in descending order
+     * Lists a user's posts by the number of likes in descending order
      * if likes are the same, by the ID in descending order.
      *
      * @param userId The ID of the user whose posts should be sorted.
-     * @param users A hashmap containing all users in the network.
-     *
-     * Logs the sorted posts if the user has any, otherwise logs that no posts exist.
+     * @param users A symbol table containing all users in the network.
+     * @param version The snapshot version to read, see {@link Snapshots}.
+     * @return The sorted posts with their likes, empty if the user has no posts, or null if the user does not exist.
      */
-    public static void sortPosts(String userId, MyHashMap<String, User> users) {
-        // if the user does not exist in the network, log an error
+    public static ArrayList<PostVersion> sortPosts(String userId, MySymbolTable<User> users, long version) {
+        // if the user does not exist in the network, it is an error
         if (!users.containsKey(userId)) {
-            InputOutputOperations.logError("sort_posts");
-            return;
+            return null;
         }
         User user = users.get(userId);
-        // if there is no post from the user, log the appropriate message
-        if (user.posts.isEmpty()) {
-            InputOutputOperations.log("No posts from " + userId + ".");
-            return;
-        }
-        InputOutputOperations.log("Sorting " + userId + "'s posts:");
-        // used heap sort to sort the posts in descending order of likes (the heap is max heap)
-        ArrayList<Post> sortedPosts = MyHeapSort.heapSort(user.posts);
-        for (Post post : sortedPosts) {
-            InputOutputOperations.log(post.postId + ", Likes: " + post.likes);
+        // the ranked posts are kept in order as likes change, so they are read in descending order without sorting
+        RankedPosts.Snapshot snapshot = user.rankedPosts.at(version);
+        ArrayList<PostVersion> sortedPosts = new ArrayList<>(snapshot.size());
+        for (PostVersion post : snapshot) {
+            sortedPosts.add(post);
         }
+        return sortedPosts;
     }
 
 }
@@ -0,0 +1,122 @@
+/**
+ * Gives every post an int label that follows the order of the post IDs, so that two posts can be ordered by
+ * comparing numbers instead of strings.
+ *
+ * The posts are kept in a doubly linked list in ID order, and the labels are unsigned and increase along the list.
+ * A new post finds its place with one search by ID and takes the label halfway between its neighbours.
+ * When there is no free label between them, the smallest aligned range of labels around the post that is sparse
+ * enough is relabeled evenly, like in the order-maintenance structure of Bender et al.
+ * The allowed density of a range falls as the range grows, so the relabeling costs amortized O(log^2 n) per post.
+ *
+ * Relabeling keeps the order of all posts, so the sets ordered by {@link Post#sortKey()} stay valid without
+ * re-inserting anything.
+ */
+public class PostOrder {
+    private static final int LABEL_BITS = 32;
+    private static final long LABEL_SPACE = 1L << LABEL_BITS;
+    // the most posts a range of 2^i labels may hold after relabeling, 2^i / 1.1^i
+    private static final long[] CAPACITY = new long[LABEL_BITS + 1];
+
+    static {
+        for (int i = 0; i <= LABEL_BITS; i++) {
+            CAPACITY[i] = (long) ((1L << i) / Math.pow(1.1, i));
+        }
+    }
+
+    // A post in the search tree, which is ordered by ID
+    private static class IdKey implements Comparable<IdKey> {
+        final Post post;
+
+        IdKey(Post post) {
+            this.post = post;
+        }
+
+        @Override
+        public int compareTo(IdKey other) {
+            return post.postId.compareTo(other.post.postId);
+        }
+    }
+
+    private final MyTreeSet<IdKey> byId = new MyTreeSet<>();
+    private Post first; // the post with the smallest ID
+
+    // Returns whether the labels have run out, at about 203 million posts
+    public boolean isFull() {
+        // relabeling only fails once all the labels are too dense
+        return byId.size() >= CAPACITY[LABEL_BITS];
+    }
+
+    /**
+     * Labels a new post and adds it to the order.
+     *
+     * @param post The post, whose ID must not be in the order yet.
+     * @throws IllegalStateException If the labels have run out, see {@link #isFull()}. The order is then left unchanged.
+     */
+    public void add(Post post) {
+        if (isFull()) {
+            throw new IllegalStateException("No labels left for post " + post.postId);
+        }
+        IdKey key = new IdKey(post);
+        IdKey before = byId.lower(key);
+        byId.add(key);
+
+        Post previous = before == null ? null : before.post;
+        Post next = previous == null ? first : previous.nextById;
+        post.previousById = previous;
+        post.nextById = next;
+        if (previous == null) {
+            first = post;
+        } else {
+            previous.nextById = post;
+        }
+        if (next != null) {
+            next.previousById = post;
+        }
+
+        long low = previous == null ? -1 : label(previous);
+        long high = next == null ? LABEL_SPACE : label(next);
+        if (high - low > 1) {
+            post.label = (int) ((low + high) / 2);
+        } else {
+            relabel(post, previous != null ? previous : next);
+        }
+    }
+
+    // Returns the label of a post as an unsigned number
+    static long label(Post post) {
+        return post.label & 0xFFFFFFFFL;
+    }
+
+    // Spreads the labels of the posts around a new post evenly over the smallest range that is sparse enough
+    private void relabel(Post post, Post neighbour) {
+        long anchor = label(neighbour);
+        // the new post is next to its neighbour in the list, so it takes the same label while the range is counted
+        post.label = neighbour.label;
+        Post firstInRange = post;
+        Post lastInRange = post;
+        long count = 1;
+        for (int bits = 1; bits <= LABEL_BITS; bits++) {
+            long size = 1L << bits;
+            long base = anchor & -size;
+            while (firstInRange.previousById != null && label(firstInRange.previousById) >= base) {
+                firstInRange = firstInRange.previousById;
+                count++;
+            }
+            while (lastInRange.nextById != null && label(lastInRange.nextById) < base + size) {
+                lastInRange = lastInRange.nextById;
+                count++;
+            }
+            if (count <= CAPACITY[bits]) {
+                long gap = size / count;
+                long label = base;
+                for (Post p = firstInRange; p != lastInRange.nextById; p = p.nextById) {
+                    p.label = (int) label;
+                    label += gap;
+                }
+                Metrics.add(Metrics.RELABELED, count);
+                return;
+            }
+        }
+        throw new IllegalStateException("No labels left for post " + post.postId);
+    }
+}
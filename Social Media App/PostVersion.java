@@ -0,0 +1,43 @@
+/**
+ * A post with its like count at one version of the network.
+ *
+ * Post versions are the immutable nodes of the {@link RankedPosts} tree of the post's author, so a reader that holds
+ * a snapshot of the tree sees the posts and their likes as they were, while writers build newer versions.
+ * The feeds and sort_posts return post versions, so their order and their like counts always agree.
+ */
+public final class PostVersion {
+    final Post post;
+    final int likes;
+    // the children in the tree, and the height and the number of posts of the subtree
+    final PostVersion left;
+    final PostVersion right;
+    final int height;
+    final int size;
+
+    PostVersion(Post post, int likes, PostVersion left, PostVersion right) {
+        this.post = post;
+        this.likes = likes;
+        this.left = left;
+        this.right = right;
+        this.height = 1 + Math.max(height(left), height(right));
+        this.size = 1 + size(left) + size(right);
+    }
+
+    // Returns the current version of a post that is not in a tree
+    static PostVersion of(Post post) {
+        return new PostVersion(post, post.likes, null, null);
+    }
+
+    // Returns the sort key of the post with the likes of this version, like Post.sortKey()
+    long sortKey() {
+        return ((long) likes << 32) | (post.label & 0xFFFFFFFFL);
+    }
+
+    static int height(PostVersion node) {
+        return node == null ? 0 : node.height;
+    }
+
+    static int size(PostVersion node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The posts of a user ordered by likes and then by post ID, kept in multiple versions so that readers
+ * never wait for writers.
+ *
+ * The posts are an AVL tree of immutable {@link PostVersion} nodes. Adding or removing a post copies only the path
+ * from the root to the changed node, so the tree of every older version stays intact and is shared with the new one.
+ * Writers change the current tree while holding the lock of the user, and {@link Snapshots#commit()} publishes it
+ * at the end of the command with a new version number. A reader takes the newest published tree that is not newer
+ * than the version it pinned, so all the trees it reads belong to the same moment.
+ *
+ * Every user keeps the published trees in a list from the newest to the oldest. When a tree is published,
+ * the trees that no pinned reader can reach any more are cut from the list and left to the garbage collector.
+ *
+ * Posts are compared with the likes stored in the tree and the current label of their ID. Relabeling post IDs keeps
+ * their order, and only runs while no reader is active, so the trees stay ordered.
+ */
+public class RankedPosts {
+
+    // A published tree, with the version it was published at and the older published trees
+    public static final class Snapshot implements Iterable<PostVersion> {
+        final long version;
+        final PostVersion root;
+        // changed whenever a post is added or removed, see FeedCursor
+        final int postsVersion;
+        volatile Snapshot older;
+
+        Snapshot(long version, PostVersion root, int postsVersion) {
+            this.version = version;
+            this.root = root;
+            this.postsVersion = postsVersion;
+        }
+
+        public int size() {
+            return PostVersion.size(root);
+        }
+
+        // Returns an iterator over the posts from the most liked one
+        public Iterator<PostVersion> iterator() {
+            DescendingIterator iterator = new DescendingIterator();
+            iterator.pushRightPath(root);
+            return iterator;
+        }
+
+        /**
+         * Returns an iterator over the posts ranked below a post.
+         *
+         * @param post A post of the user.
+         * @param likes The likes of the post in this snapshot.
+         * @return An iterator over the posts with smaller sort keys, from the most liked one.
+         */
+        public Iterator<PostVersion> iteratorBelow(Post post, int likes) {
+            long key = ((long) likes << 32) | (post.label & 0xFFFFFFFFL);
+            DescendingIterator iterator = new DescendingIterator();
+            for (PostVersion node = root; node != null; ) {
+                if (node.sortKey() < key) {
+                    iterator.push(node);
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return iterator;
+        }
+    }
+
+    private PostVersion root;
+    private int postsVersion = 0;
+    private volatile Snapshot published = new Snapshot(0, null, 0);
+    boolean touched; // whether the tree changed in the running command, kept by Snapshots
+
+    // Adds a post with its current likes, the post must not be in the tree
+    public void add(Post post) {
+        root = insert(root, post, post.sortKey());
+        changed();
+    }
+
+    // Removes a post, must be called before its likes change
+    public void remove(Post post) {
+        root = delete(root, post.sortKey());
+        changed();
+    }
+
+    public int size() {
+        return PostVersion.size(root);
+    }
+
+    // Returns the count of changes to the current tree
+    public int postsVersion() {
+        return postsVersion;
+    }
+
+    /**
+     * Returns the published tree of a version.
+     *
+     * @param version The version pinned by the reader, or {@link Snapshots#LATEST} for the newest published tree.
+     * @return The newest tree published at or before the version.
+     */
+    public Snapshot at(long version) {
+        Snapshot snapshot = published;
+        while (snapshot.version > version) {
+            snapshot = snapshot.older;
+        }
+        return snapshot;
+    }
+
+    // Publishes the current tree at a version if it changed since it was last published
+    void publish(long version) {
+        Snapshot last = published;
+        if (last.root == root && last.postsVersion == postsVersion) {
+            return;
+        }
+        Snapshot snapshot = new Snapshot(version, root, postsVersion);
+        snapshot.older = last;
+        published = snapshot;
+    }
+
+    // Cuts the trees that are older than the newest one at or before the oldest pinned version
+    void trim(long oldestPinned) {
+        Snapshot snapshot = published;
+        while (snapshot != null && snapshot.version > oldestPinned) {
+            snapshot = snapshot.older;
+        }
+        if (snapshot != null) {
+            snapshot.older = null;
+        }
+    }
+
+    private void changed() {
+        postsVersion++;
+        Snapshots.touch(this);
+    }
+
+    // Returns a copy of the subtree with the post added
+    private static PostVersion insert(PostVersion node, Post post, long key) {
+        if (node == null) {
+            return new PostVersion(post, post.likes, null, null);
+        }
+        if (key < node.sortKey()) {
+            return balance(node, insert(node.left, post, key), node.right);
+        }
+        return balance(node, node.left, insert(node.right, post, key));
+    }
+
+    // Returns a copy of the subtree without the post with the key
+    private static PostVersion delete(PostVersion node, long key) {
+        if (node == null) {
+            return null;
+        }
+        long nodeKey = node.sortKey();
+        if (key < nodeKey) {
+            return balance(node, delete(node.left, key), node.right);
+        }
+        if (key > nodeKey) {
+            return balance(node, node.left, delete(node.right, key));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // the smallest post of the right subtree takes the place of the removed one
+        PostVersion smallest = node.right;
+        while (smallest.left != null) {
+            smallest = smallest.left;
+        }
+        return balance(smallest, node.left, deleteSmallest(node.right));
+    }
+
+    private static PostVersion deleteSmallest(PostVersion node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node, deleteSmallest(node.left), node.right);
+    }
+
+    // Returns a node with the post of another node and new children, rotated if the heights differ by more than one
+    private static PostVersion balance(PostVersion node, PostVersion left, PostVersion right) {
+        int difference = PostVersion.height(left) - PostVersion.height(right);
+        if (difference > 1) {
+            if (PostVersion.height(left.left) < PostVersion.height(left.right)) {
+                left = rotateLeft(left, left.left, left.right);
+            }
+            return rotateRight(node, left, right);
+        }
+        if (difference < -1) {
+            if (PostVersion.height(right.right) < PostVersion.height(right.left)) {
+                right = rotateRight(right, right.left, right.right);
+            }
+            return rotateLeft(node, left, right);
+        }
+        return new PostVersion(node.post, node.likes, left, right);
+    }
+
+    private static PostVersion rotateRight(PostVersion node, PostVersion left, PostVersion right) {
+        PostVersion lowered = new PostVersion(node.post, node.likes, left.right, right);
+        return new PostVersion(left.post, left.likes, left.left, lowered);
+    }
+
+    private static PostVersion rotateLeft(PostVersion node, PostVersion left, PostVersion right) {
+        PostVersion lowered = new PostVersion(node.post, node.likes, left, right.left);
+        return new PostVersion(right.post, right.likes, lowered, right.right);
+    }
+
+    // Walks a tree from the largest post to the smallest one with a stack of the nodes whose left subtree is left
+    private static final class DescendingIterator implements Iterator<PostVersion> {
+        private PostVersion[] stack = new PostVersion[16];
+        private int top = 0;
+
+        void push(PostVersion node) {
+            if (top == stack.length) {
+                PostVersion[] grown = new PostVersion[top * 2];
+                System.arraycopy(stack, 0, grown, 0, top);
+                stack = grown;
+            }
+            stack[top++] = node;
+        }
+
+        void pushRightPath(PostVersion node) {
+            for (; node != null; node = node.right) {
+                push(node);
+            }
+        }
+
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        public PostVersion next() {
+            if (top == 0) {
+                throw new NoSuchElementException();
+            }
+            PostVersion node = stack[--top];
+            pushRightPath(node.left);
+            return node;
+        }
+    }
+}
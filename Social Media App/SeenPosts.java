@@ -0,0 +1,65 @@
+/**
+ * The set of the posts a user has seen, as interned post IDs, with a Bloom filter in front of it.
+ *
+ * Feed generation checks every candidate post against this set, and most candidates have not been seen.
+ * A {@link MyBloomFilter} answers those checks from one cache line, and only the posts it can not rule out are
+ * looked up in the exact {@link MyBitmapSet}. When the set outgrows the filter, the filter is rebuilt four times
+ * bigger from the exact set, so the rebuilds cost O(1) per post over time.
+ *
+ * Posts are never unseen, so there is no remove. With {@code --stats=true} the checks, the checks answered by the
+ * filter, and its false positives are reported for each command.
+ */
+public class SeenPosts {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int GROWTH = 4;
+
+    private final MyBitmapSet posts = new MyBitmapSet();
+    private MyBloomFilter filter; // created with the first post
+
+    // Adds a post to the set, returns false if it was already present
+    public boolean add(int postIndex) {
+        if (!posts.add(postIndex)) {
+            return false;
+        }
+        if (filter == null) {
+            filter = new MyBloomFilter(INITIAL_CAPACITY);
+        }
+        if (posts.size() > filter.capacity()) {
+            // the filter is full, so a bigger one is built from the exact set, which already holds the new post
+            filter = new MyBloomFilter(filter.capacity() * GROWTH);
+            for (MyBitmapSet.IntIterator it = posts.iterator(); it.hasNext(); ) {
+                filter.add(it.next());
+            }
+        } else {
+            filter.add(postIndex);
+        }
+        return true;
+    }
+
+    // Checks if the user has seen the post
+    public boolean contains(int postIndex) {
+        Metrics.add(Metrics.SEEN_CHECKS, 1);
+        if (filter == null || !filter.mightContain(postIndex)) {
+            Metrics.add(Metrics.FILTER_NEGATIVES, 1);
+            return false;
+        }
+        if (!posts.contains(postIndex)) {
+            Metrics.add(Metrics.FILTER_FALSE_POSITIVES, 1);
+            return false;
+        }
+        return true;
+    }
+
+    // Returns an iterator over the seen posts in ascending order
+    public MyBitmapSet.IntIterator iterator() {
+        return posts.iterator();
+    }
+
+    public int size() {
+        return posts.size();
+    }
+
+    public boolean isEmpty() {
+        return posts.isEmpty();
+    }
+}
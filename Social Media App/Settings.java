@@ -0,0 +1,81 @@
+/**
+ * Holds the optional settings of the program, given as command line options after the input and output files,
+ * or as the only arguments in server mode. Every option has the form {@code --name=value}.
+ */
+public class Settings {
+
+    // How the feeds are built: pulled from the followed users on every read, pushed to the followers on every write,
+    // or pushed for most users and pulled for the users with many followers
+    public enum FeedMode { PULL, PUSH, HYBRID }
+
+    static FeedMode feedMode = FeedMode.PULL;
+    // the follower count from which a user's posts are pulled instead of pushed in hybrid feed mode
+    static int celebrityThreshold = 1000;
+    // whether the work done by each kind of command is counted and reported to the standard error
+    static boolean stats = false;
+    // whether the users and posts tables grow a few buckets at a time instead of rehashing at once
+    static boolean incrementalResize = false;
+    // whether the followed users are read from compact epochs of the follow graph, see FollowGraph
+    static boolean csrGraph = false;
+    // the number of threads that run independent commands of the input at the same time, 1 runs them one by one
+    static int threads = 1;
+    // whether reading the input and writing the log run on their own threads, see PipelinedCommandRunner
+    static boolean pipeline = false;
+    // the snapshot file loaded into the network before the first command, see SnapshotOperations
+    static String loadSnapshot = null;
+    // the write-ahead log of the changes, and how long a change may wait to be written to the disk, see WriteAheadLog
+    static String wal = null;
+    static int walWindow = 10;
+    // the directory of the file that keeps the contents of the posts outside of the heap, see MyByteArena
+    static String contentDir = null;
+    // the socket on which the commands are served instead of being read from a file, see CommandServer
+    static String serve = null;
+
+    /**
+     * Applies a single command line option.
+     *
+     * @param option The option in the form {@code --name=value}.
+     * @throws IllegalArgumentException If the option or its value is not known.
+     */
+    public static void parse(String option) {
+        String[] parts = option.split("=", 2);
+        if (parts.length != 2 || !parts[0].startsWith("--")) {
+            throw new IllegalArgumentException("Invalid option: " + option);
+        }
+        String name = parts[0].substring(2);
+        String value = parts[1];
+        if (name.equals("feed")) {
+            feedMode = FeedMode.valueOf(value.toUpperCase());
+        } else if (name.equals("celebrity-threshold")) {
+            celebrityThreshold = Integer.parseInt(value);
+        } else if (name.equals("stats")) {
+            stats = Boolean.parseBoolean(value);
+        } else if (name.equals("incremental-resize")) {
+            incrementalResize = Boolean.parseBoolean(value);
+        } else if (name.equals("csr-graph")) {
+            csrGraph = Boolean.parseBoolean(value);
+        } else if (name.equals("pipeline")) {
+            pipeline = Boolean.parseBoolean(value);
+        } else if (name.equals("load-snapshot")) {
+            loadSnapshot = value;
+        } else if (name.equals("wal")) {
+            wal = value;
+        } else if (name.equals("wal-window")) {
+            walWindow = Integer.parseInt(value);
+            if (walWindow < 0) {
+                throw new IllegalArgumentException("Invalid option: " + option);
+            }
+        } else if (name.equals("content-dir")) {
+            contentDir = value;
+        } else if (name.equals("serve")) {
+            serve = value;
+        } else if (name.equals("threads")) {
+            threads = Integer.parseInt(value);
+            if (threads < 1) {
+                throw new IllegalArgumentException("Invalid option: " + option);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown option: " + option);
+        }
+    }
+}
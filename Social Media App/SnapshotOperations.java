@@ -0,0 +1,411 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves the state of a network to a compact binary file and loads it back, so a restart reads one file
+ * instead of running every command since the beginning again.
+ *
+ * The file keeps the users and posts in the order of their interned IDs, so the IDs stay the same and the sets of IDs
+ * are stored without translating them. After a header with a random generation number that tells the saved snapshots
+ * apart, and the counts of users and posts, come four sections:
+ * <ul>
+ *     <li>every user: its ID, whether it is a celebrity, and its follower and followed counts,</li>
+ *     <li>every post: its ID, the interned ID of its author, its content, and the users who liked it,</li>
+ *     <li>every user: the interned IDs of the users it follows,</li>
+ *     <li>every user: the interned IDs of the posts it has seen.</li>
+ * </ul>
+ * Numbers are written as variable-length ints of 7 bits per byte, and the sorted sets as the gaps between
+ * their elements, so small and dense IDs take one byte. Strings are written as their UTF-8 length and bytes.
+ * The file ends with the CRC-32C of everything before it, which is checked before anything is loaded, so a file
+ * that is cut short or damaged leaves the network unchanged.
+ *
+ * Everything that follows from the saved state is rebuilt when loading: the followers of every user,
+ * the order of the post IDs, the ranked posts of every user, and the feeds in push and hybrid feed modes.
+ * The scroll positions are not saved, since scrolls only use them to skip posts that are already seen.
+ *
+ * The file is memory-mapped when loading, and the users and posts tables are sized from the header before
+ * anything is added, so loading takes time in proportion to the size of the file.
+ */
+public class SnapshotOperations {
+    private static final int MAGIC = 0x534D4150; // "SMAP"
+    private static final int FORMAT_VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long WINDOW_SIZE = 1L << 28; // the part of the file mapped at once
+
+    /**
+     * Writes the state of a network to a file. The file is first written next to the target,
+     * and moved over it when it is complete, so an earlier snapshot is never left half overwritten.
+     *
+     * @param path The path of the snapshot file.
+     * @param users A symbol table containing all users in the network.
+     * @param posts A symbol table containing all posts in the network.
+     * @return The generation number of the snapshot, which a write-ahead log started from it records.
+     * @throws IOException If the file can not be written.
+     */
+    public static long saveSnapshot(Path path, MySymbolTable<User> users, MySymbolTable<Post> posts) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long generation;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            generation = ThreadLocalRandom.current().nextLong();
+            int userCount = users.size();
+            int postCount = posts.size();
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(generation);
+            out.writeVarint(userCount);
+            out.writeVarint(postCount);
+            for (int i = 0; i < userCount; i++) {
+                User user = users.get(i);
+                out.writeString(user.userId);
+                out.writeByte(user.celebrity ? 1 : 0);
+                out.writeVarint(user.followers.size());
+                out.writeVarint(user.following.size());
+            }
+            for (int i = 0; i < postCount; i++) {
+                Post post = posts.get(i);
+                out.writeString(post.postId);
+                out.writeVarint(post.authorIndex);
+                out.writeBytes(post.contentBytes());
+                out.writeVarint(post.peopleLikedPost.size());
+                out.writeSortedSet(post.peopleLikedPost.iterator());
+            }
+            for (int i = 0; i < userCount; i++) {
+                MyIntHashSet following = users.get(i).following;
+                for (MyIntHashSet.IntIterator it = following.iterator(); it.hasNext(); ) {
+                    out.writeVarint(it.next());
+                }
+            }
+            for (int i = 0; i < userCount; i++) {
+                SeenPosts seenPosts = users.get(i).seenPosts;
+                out.writeVarint(seenPosts.size());
+                out.writeSortedSet(seenPosts.iterator());
+            }
+            out.writeInt(out.checksum());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return generation;
+    }
+
+    /**
+     * Reads the state of a network from a file into an empty network.
+     *
+     * @param path The path of the snapshot file.
+     * @param users The symbol table of the users, which must be empty.
+     * @param posts The symbol table of the posts, which must be empty.
+     * @param order The order of all post IDs, which labels the loaded posts.
+     * @param contents The arena that keeps the contents of the posts.
+     * @return The generation number of the snapshot.
+     * @throws IOException If the file can not be read, is not a snapshot, or does not match its checksum, then the
+     *                     network is unchanged. Only a file that matches its checksum but was not written by
+     *                     {@link #saveSnapshot} may leave a part of it loaded.
+     */
+    public static long loadSnapshot(Path path, MySymbolTable<User> users, MySymbolTable<Post> posts, PostOrder order,
+                                    MyByteArena contents) throws IOException {
+        long generation;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            generation = in.readLong();
+            checkChecksum(channel, path);
+            int userCount = in.readVarint();
+            int postCount = in.readVarint();
+            users.ensureCapacity(userCount);
+            posts.ensureCapacity(postCount);
+
+            int[] followingCounts = new int[userCount];
+            for (int i = 0; i < userCount; i++) {
+                User user = new User(i, in.readString());
+                user.celebrity = in.readByte() != 0;
+                user.followers = new MyIntHashSet(in.readVarint());
+                followingCounts[i] = in.readVarint();
+                user.following = new MyIntHashSet(followingCounts[i]);
+                users.put(user.userId, user);
+            }
+            for (int i = 0; i < postCount; i++) {
+                String postId = in.readString();
+                User author = users.get(in.readIndex(userCount));
+                // the content goes from the file to the arena without being decoded
+                Post post = new Post(i, postId, author.index, author.userId, contents, in.readBytes());
+                int likers = in.readVarint();
+                int liker = -1;
+                for (int j = 0; j < likers; j++) {
+                    liker = in.readNext(liker, userCount);
+                    post.peopleLikedPost.add(liker);
+                }
+                post.likes = post.peopleLikedPost.size();
+                order.add(post);
+                posts.put(postId, post);
+                author.posts.add(post);
+            }
+            for (int i = 0; i < userCount; i++) {
+                User follower = users.get(i);
+                for (int j = 0; j < followingCounts[i]; j++) {
+                    User followed = users.get(in.readIndex(userCount));
+                    follower.following.add(followed.index);
+                    followed.followers.add(follower.index);
+                }
+            }
+            for (int i = 0; i < userCount; i++) {
+                User user = users.get(i);
+                int count = in.readVarint();
+                int seen = -1;
+                for (int j = 0; j < count; j++) {
+                    seen = in.readNext(seen, postCount);
+                    user.seenPosts.add(seen);
+                }
+            }
+        }
+        rebuild(users, posts);
+        return generation;
+    }
+
+    // Checks the whole file against the checksum at its end, before anything is added to the network.
+    // The header has been read, so the file is long enough to have a checksum.
+    private static void checkChecksum(FileChannel channel, Path path) throws IOException {
+        long end = channel.size() - 4;
+        CRC32C crc = new CRC32C();
+        for (long start = 0; start < end; start += WINDOW_SIZE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, end - start)));
+        }
+        if (channel.map(FileChannel.MapMode.READ_ONLY, end, 4).getInt() != (int) crc.getValue()) {
+            throw new IOException("The snapshot file " + path + " is cut short or damaged");
+        }
+    }
+
+    // Builds the state that follows from the loaded users and posts
+    private static void rebuild(MySymbolTable<User> users, MySymbolTable<Post> posts) {
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            users.get(post.authorIndex).rankedPosts.add(post);
+        }
+        boolean hybrid = Settings.feedMode == Settings.FeedMode.HYBRID;
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            // a celebrity stays one until its follower count drops below half of the threshold, see FeedStore
+            int followerCount = user.followers.size();
+            user.celebrity = hybrid && (user.celebrity ? followerCount >= Settings.celebrityThreshold / 2
+                    : followerCount >= Settings.celebrityThreshold);
+        }
+        if (!FeedStore.isEnabled()) {
+            return;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            User follower = users.get(i);
+            for (MyIntHashSet.IntIterator it = follower.following.iterator(); it.hasNext(); ) {
+                User followed = users.get(it.next());
+                if (followed.celebrity) {
+                    follower.followedCelebrities.add(followed.index);
+                    continue;
+                }
+                for (Post post : followed.posts) {
+                    if (!follower.seenPosts.contains(post.index)) {
+                        follower.feed.add(post);
+                    }
+                }
+            }
+        }
+    }
+
+    // Encodes the values into a buffer that is written to the channel whenever it fills up
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32C crc = new CRC32C(); // of the bytes written to the channel
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeByte(int value) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        // Writes a non-negative int in 7-bit groups, the low group first, with the high bit set on all but the last
+        void writeVarint(int value) throws IOException {
+            if (buffer.remaining() < 5) {
+                flush();
+            }
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeString(String value) throws IOException {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            writeVarint(bytes.length);
+            if (buffer.remaining() < bytes.length) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        }
+
+        // Writes the elements of an ascending iterator as the gaps between them
+        void writeSortedSet(MyBitmapSet.IntIterator it) throws IOException {
+            int previous = -1;
+            while (it.hasNext()) {
+                int value = it.next();
+                writeVarint(value - previous - 1);
+                previous = value;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        // Returns the CRC-32C of everything written so far
+        int checksum() throws IOException {
+            flush();
+            return (int) crc.getValue();
+        }
+
+        private void write(ByteBuffer bytes) throws IOException {
+            crc.update(bytes.duplicate());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    // Decodes the values from the file, which is memory-mapped in large windows
+    private static final class Input {
+        private final FileChannel channel;
+        private final long fileSize;
+        private long windowStart = 0; // the offset in the file of the first byte of the buffer
+        private ByteBuffer buffer;
+        private byte[] scratch = new byte[256]; // reused for decoding strings
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = Math.max(0, channel.size() - 4); // the checksum is not read as data
+            map(0, 0);
+        }
+
+        int readByte() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        int readInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Malformed number in the snapshot file");
+        }
+
+        // Reads an interned ID that must be smaller than a count
+        int readIndex(int count) throws IOException {
+            int index = readVarint();
+            if (index >= count) {
+                throw new IOException("Unknown ID " + index + " in the snapshot file");
+            }
+            return index;
+        }
+
+        // Reads the next element of a sorted set of interned IDs, which must be smaller than a count
+        int readNext(int previous, int count) throws IOException {
+            int gap = readVarint();
+            if (gap >= count - previous - 1) {
+                throw new IOException("Unknown ID after " + previous + " in the snapshot file");
+            }
+            return previous + gap + 1;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readVarint();
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            ensure(length);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // Moves the window so that the next bytes are mapped
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            long start = windowStart + buffer.position();
+            if (fileSize - start < length) {
+                throw new EOFException("The snapshot file ends too early");
+            }
+            map(start, length);
+        }
+
+        private void map(long start, int length) throws IOException {
+            long size = Math.min(Math.max(WINDOW_SIZE, length), fileSize - start);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowStart = start;
+        }
+    }
+}
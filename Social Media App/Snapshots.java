@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+
+/**
+ * The version clock of the {@link RankedPosts} trees, which lets feed and sort_posts reads see a consistent
+ * snapshot of the posts and likes of many users without locking them.
+ *
+ * Every command that changed some trees publishes them together with {@link #commit()}, under one new version
+ * number, and only then moves the clock to that version. A reader pins the current version with {@link #pin()}
+ * and reads the trees of that version, so it sees either all or none of the changes of every command.
+ *
+ * Each thread has a slot holding the version it pinned. Publishing a tree cuts the older trees that no pinned
+ * version can reach, so old versions are kept only while a reader may still use them.
+ */
+public class Snapshots {
+    // the version that reads the newest published trees, for readers that hold the locks of the users they read
+    static final long LATEST = Long.MAX_VALUE;
+
+    // The state of one thread: its pinned version, and the trees changed by its running command
+    private static class Slot {
+        volatile long pinned = LATEST;
+        final ArrayList<RankedPosts> touched = new ArrayList<>();
+    }
+
+    private static volatile long version = 0;
+    private static final ArrayList<Slot> slots = new ArrayList<>();
+    private static final ThreadLocal<Slot> threadSlot = ThreadLocal.withInitial(Snapshots::register);
+
+    private static Slot register() {
+        Slot slot = new Slot();
+        synchronized (slots) {
+            slots.add(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Pins the current version for the reads of this thread, until {@link #unpin()}.
+     *
+     * @return The pinned version.
+     */
+    public static long pin() {
+        Slot slot = threadSlot.get();
+        long pinned;
+        // a commit that moved the clock before the pin was visible may have cut the trees of the version,
+        // so the pin is retried until the clock stands still across it
+        do {
+            pinned = version;
+            slot.pinned = pinned;
+        } while (version != pinned);
+        return pinned;
+    }
+
+    // Returns the version of the newest published trees
+    public static long current() {
+        return version;
+    }
+
+    public static void unpin() {
+        threadSlot.get().pinned = LATEST;
+    }
+
+    /**
+     * Drops the slot of this thread, for threads that run no more commands, such as the thread of a closed
+     * connection. Must not be called while a command of the thread is running.
+     */
+    public static void release() {
+        Slot slot = threadSlot.get();
+        threadSlot.remove();
+        synchronized (slots) {
+            slots.remove(slot);
+        }
+    }
+
+    // Records a tree changed by the command running on this thread
+    static void touch(RankedPosts posts) {
+        if (!posts.touched) {
+            posts.touched = true;
+            threadSlot.get().touched.add(posts);
+        }
+    }
+
+    /**
+     * Publishes the trees changed by the command running on this thread under a new version.
+     * Must be called while the command still holds the locks of the users whose trees it changed.
+     */
+    public static void commit() {
+        ArrayList<RankedPosts> touched = threadSlot.get().touched;
+        if (touched.isEmpty()) {
+            return;
+        }
+        synchronized (Snapshots.class) {
+            long next = version + 1;
+            for (RankedPosts posts : touched) {
+                posts.publish(next);
+            }
+            version = next;
+        }
+        long oldest = oldestPinned();
+        for (RankedPosts posts : touched) {
+            posts.trim(oldest);
+            posts.touched = false;
+        }
+        touched.clear();
+    }
+
+    // Returns the oldest version that a reader may still use
+    private static long oldestPinned() {
+        long oldest = version;
+        synchronized (slots) {
+            for (Slot slot : slots) {
+                oldest = Math.min(oldest, slot.pinned);
+            }
+        }
+        return oldest;
+    }
+}
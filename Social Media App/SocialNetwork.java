@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * The typed API of a social network, for callers that run commands from Java instead of from an input file.
+ *
+ * Every command takes its arguments as separate values and returns a structured result instead of writing a log line,
+ * so nothing is joined into a string or parsed again. The text commands of an input file are run by
+ * {@link InputOutputOperations}, which calls this API and writes the log lines from the results.
+ *
+ * Any number of threads can call the API at the same time. The users and posts tables are concurrent, and every
+ * command locks the users it reads or writes with {@link UserLocks}, the state of a post belonging to its author.
+ * The commands that change the order of all posts or fan out to the feeds of other users, creating posts,
+ * and in push and hybrid feed modes following, unfollowing, liking and scrolling, run alone under the write lock
+ * of the network, while all other commands share its read lock.
+ *
+ * The feeds and sort_posts do not lock the users whose posts they read. They read a snapshot of the ranked posts of
+ * those users at one version of the {@link Snapshots} clock, which writers publish at the end of every command,
+ * so they never wait for the writers on those users and never make them wait.
+ */
+public class SocialNetwork {
+    // the result of toggling the like of a post
+    public enum LikeResult { LIKED, UNLIKED, FAILED }
+
+    private final MySymbolTable<User> users = new MySymbolTable<>();
+    private final MySymbolTable<Post> posts = new MySymbolTable<>();
+    private final PostOrder postOrder = new PostOrder();
+    private final MyByteArena contents = new MyByteArena(Settings.contentDir == null ? null : Path.of(Settings.contentDir));
+    private final StampedLock networkLock = new StampedLock();
+    private final FollowGraph followGraph = new FollowGraph(users, networkLock, Settings.csrGraph);
+
+    // Returns true if the user is created, false if the ID is taken
+    public boolean createUser(String userId) {
+        return shared(new UserLocks(users), () -> UserOperations.createUser(userId, users));
+    }
+
+    // Returns true if the follower now follows the other user, false if it is not allowed
+    public boolean follow(String followerId, String followedId) {
+        boolean followed;
+        if (FeedStore.isEnabled()) {
+            followed = exclusive(() -> UserOperations.followUser(followerId, followedId, users));
+        } else {
+            followed = shared(lockUsers(followerId, followedId), () -> UserOperations.followUser(followerId, followedId, users));
+        }
+        if (followed) {
+            followGraph.changed();
+        }
+        return followed;
+    }
+
+    // Returns true if the follower no longer follows the other user, false if it is not allowed
+    public boolean unfollow(String followerId, String unfollowedId) {
+        boolean unfollowed;
+        if (FeedStore.isEnabled()) {
+            unfollowed = exclusive(() -> UserOperations.unfollowUser(followerId, unfollowedId, users));
+        } else {
+            unfollowed = shared(lockUsers(followerId, unfollowedId), () -> UserOperations.unfollowUser(followerId, unfollowedId, users));
+        }
+        if (unfollowed) {
+            followGraph.changed();
+        }
+        return unfollowed;
+    }
+
+    // Returns the created post, or null if the user does not exist or the post ID is taken
+    public Post createPost(String userId, String postId, String content) {
+        // relabeling post IDs changes the sort keys of posts of every user
+        return exclusive(() -> PostOperations.createPost(userId, postId, content, users, posts, postOrder, contents));
+    }
+
+    // Returns true if the post is marked as seen by the user
+    public boolean seePost(String userId, String postId) {
+        UserLocks locks = new UserLocks(users);
+        locks.add(users.get(userId), true);
+        return shared(locks, () -> PostOperations.seePost(userId, postId, users, posts));
+    }
+
+    // Returns true if all posts of the viewed user are marked as seen by the viewer
+    public boolean seeAllPostsFromUser(String viewerId, String viewedId) {
+        UserLocks locks = new UserLocks(users);
+        locks.add(users.get(viewerId), true);
+        locks.add(users.get(viewedId), false);
+        return shared(locks, () -> PostOperations.seeAllPostsFromUser(viewerId, viewedId, users));
+    }
+
+    // Likes the post if the user has not liked it, otherwise unlikes it
+    public LikeResult toggleLike(String userId, String postId) {
+        if (FeedStore.isEnabled()) {
+            return exclusive(() -> PostOperations.toggleLike(userId, postId, users, posts));
+        }
+        UserLocks locks = new UserLocks(users);
+        locks.add(users.get(userId), true);
+        Post post = posts.get(postId);
+        if (post != null) {
+            locks.add(users.get(post.authorIndex), true);
+        }
+        return shared(locks, () -> PostOperations.toggleLike(userId, postId, users, posts));
+    }
+
+    // Returns at most num posts of the user's feed with their likes, or null if the user does not exist
+    public ArrayList<PostVersion> generateFeed(String userId, int num) {
+        // only the user is locked, the posts of the followed users are read from a snapshot
+        UserLocks locks = new UserLocks(users);
+        locks.add(users.get(userId), false);
+        return reading(locks, version -> FeedOperations.generateFeed(userId, num, users, followGraph, version));
+    }
+
+    /**
+     * Scrolls through the user's feed, liking or only seeing each post.
+     *
+     * @param userId The ID of the user who scrolls.
+     * @param num The number of posts to scroll through.
+     * @param actions The action for each post, 0 for "saw" and 1 for "like".
+     * @return The posts scrolled through, fewer than num if the feed ran out, or null if the user does not exist.
+     */
+    public ArrayList<Post> scrollThroughFeed(String userId, int num, int[] actions) {
+        if (FeedStore.isEnabled()) {
+            return exclusive(() -> FeedOperations.scrollThroughFeed(userId, num, actions, users, followGraph));
+        }
+        return withFeed(userId, true, () -> FeedOperations.scrollThroughFeed(userId, num, actions, users, followGraph));
+    }
+
+    /**
+     * Computes the first posts of every user's feed in parallel, see {@link CachedFeed}. The feed reads that follow
+     * return them as long as they are current, instead of merging the posts of the followed users again.
+     *
+     * @param num The number of posts computed for each user.
+     * @return The number of users whose feeds were computed.
+     */
+    public int generateFeedAll(int num) {
+        // the feeds are computed alone, so every one of them sees the same state
+        return exclusive(() -> FeedOperations.generateFeedAll(num, users, followGraph));
+    }
+
+    /**
+     * Recommends users to follow, by how many of the followed users follow them, see {@link GraphOperations}.
+     *
+     * @param userId The ID of the user who gets the recommendations.
+     * @param k The maximum number of recommendations.
+     * @return At most k recommendations, fewer if no more users are followed by the followed users,
+     *         or null if the user does not exist.
+     */
+    public ArrayList<GraphOperations.Recommendation> recommendFollows(String userId, int k) {
+        // the followed users are read locked, so none of them follows or unfollows anyone while they are counted
+        return withFeed(userId, false, () -> GraphOperations.recommendFollows(userId, k, users, followGraph));
+    }
+
+    // Returns the user's posts with their likes, by likes and then by ID in descending order,
+    // or null if the user does not exist
+    public ArrayList<PostVersion> sortPosts(String userId) {
+        return reading(new UserLocks(users), version -> PostOperations.sortPosts(userId, users, version));
+    }
+
+    /**
+     * Saves the users, posts, follows, likes and seen posts of the network to a binary file, see {@link SnapshotOperations}.
+     * With a write-ahead log, the log starts again from the snapshot.
+     *
+     * @param path The path of the snapshot file.
+     * @throws IOException If the file can not be written.
+     */
+    public void saveSnapshot(String path) throws IOException {
+        // the snapshot is written alone, so it holds the state between two commands
+        networkLock.writeLock();
+        try {
+            long generation = SnapshotOperations.saveSnapshot(Path.of(path), users, posts);
+            // the changes logged so far are in the snapshot
+            WriteAheadLog.checkpoint(Path.of(path), generation);
+        } finally {
+            networkLock.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * Loads a binary file written by {@link #saveSnapshot(String)} into the network, which must be empty.
+     * With a write-ahead log, the log starts again from the loaded snapshot.
+     *
+     * @param path The path of the snapshot file.
+     * @return true if the snapshot is loaded, false if the network already has users or posts.
+     * @throws IOException If the file can not be read or is not a snapshot, or the new log can not be written.
+     */
+    public boolean loadSnapshot(String path) throws IOException {
+        networkLock.writeLock();
+        try {
+            // the interned IDs of the file are given in order, so they must be the first ones of the tables
+            if (users.size() > 0 || posts.size() > 0) {
+                return false;
+            }
+            long generation = SnapshotOperations.loadSnapshot(Path.of(path), users, posts, postOrder, contents);
+            followGraph.rebuild();
+            // the changes logged from now on refer to the interned IDs of the snapshot
+            WriteAheadLog.checkpoint(Path.of(path), generation);
+            return true;
+        } finally {
+            Snapshots.commit();
+            networkLock.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * Recovers the network from a write-ahead log, and then logs every change to it, see {@link WriteAheadLog}.
+     * The network must be empty.
+     *
+     * @param logPath The path of the log, which is created if it does not exist.
+     * @param snapshotPath The snapshot that a new log starts from, or null for an empty network.
+     *                     A log that already starts from a snapshot loads its own.
+     * @param windowMillis How long a change may wait to be written to the disk, 0 to write it before the command returns.
+     * @throws IOException If the log or its snapshot can not be read, or the log can not be opened.
+     */
+    public void openWriteAheadLog(String logPath, String snapshotPath, long windowMillis) throws IOException {
+        networkLock.writeLock();
+        try {
+            if (users.size() > 0 || posts.size() > 0) {
+                throw new IllegalStateException("The write-ahead log must be opened before the first change");
+            }
+            WriteAheadLog.open(Path.of(logPath), snapshotPath, windowMillis, users, posts, postOrder, contents);
+            followGraph.rebuild();
+        } finally {
+            Snapshots.commit();
+            networkLock.tryUnlockWrite();
+        }
+    }
+
+    // Retrieves the user with the given ID, or null if there is none
+    public User getUser(String userId) {
+        return users.get(userId);
+    }
+
+    // Retrieves the post with the given ID, or null if there is none
+    public Post getPost(String postId) {
+        return posts.get(postId);
+    }
+
+    // Returns the interned ID that the next created user will get
+    int nextUserIndex() {
+        return users.nextId();
+    }
+
+    // Runs an operation alone, while no other command runs
+    private <T> T exclusive(Supplier<T> operation) {
+        networkLock.writeLock();
+        try {
+            return operation.get();
+        } finally {
+            Snapshots.commit();
+            networkLock.tryUnlockWrite();
+            WriteAheadLog.commit();
+        }
+    }
+
+    // Runs an operation holding the locks of the users it uses, at the same time as the commands on other users.
+    // If one of the users did not exist, it may be created before the operation looks it up, so the operation runs alone
+    private <T> T shared(UserLocks locks, Supplier<T> operation) {
+        if (!locks.isComplete()) {
+            return exclusive(operation);
+        }
+        networkLock.readLock();
+        try {
+            locks.lockAll();
+            try {
+                return operation.get();
+            } finally {
+                Snapshots.commit();
+                locks.unlockAll();
+            }
+        } finally {
+            networkLock.tryUnlockRead();
+            WriteAheadLog.commit();
+        }
+    }
+
+    // Runs a read on a pinned snapshot version, holding only the locks of the users whose own state it reads.
+    // The read lock of the network keeps post IDs from being relabeled while the snapshot is compared
+    private <T> T reading(UserLocks locks, LongFunction<T> read) {
+        if (!locks.isComplete()) {
+            return exclusive(() -> read.apply(Snapshots.LATEST));
+        }
+        networkLock.readLock();
+        try {
+            locks.lockAll();
+            long version = Snapshots.pin();
+            try {
+                return read.apply(version);
+            } finally {
+                Snapshots.unpin();
+                locks.unlockAll();
+            }
+        } finally {
+            networkLock.tryUnlockRead();
+        }
+    }
+
+    // Returns the write locks of two users
+    private UserLocks lockUsers(String firstId, String secondId) {
+        UserLocks locks = new UserLocks(users);
+        locks.add(users.get(firstId), true);
+        locks.add(users.get(secondId), true);
+        return locks;
+    }
+
+    /**
+     * Runs an operation on the feed or the followed users of a user, holding the locks of the user and of every user
+     * it follows.
+     *
+     * @param userId The ID of the user whose feed is used.
+     * @param write Whether the write locks are taken, for operations that change the feed.
+     * @param operation The operation.
+     * @return The result of the operation.
+     *
+     * The followed users are read before their locks are taken, so the locks are taken again if the user followed
+     * or unfollowed someone meanwhile.
+     */
+    private <T> T withFeed(String userId, boolean write, Supplier<T> operation) {
+        User user = users.get(userId);
+        if (user == null) {
+            return exclusive(operation);
+        }
+        networkLock.readLock();
+        try {
+            UserLocks locks = new UserLocks(users);
+            while (true) {
+                int version;
+                locks.add(user, write);
+                user.lock.readLock();
+                try {
+                    version = user.followingVersion;
+                    FollowGraph.Row row = followGraph.following(user);
+                    if (row != null) {
+                        for (int i = row.start; i < row.end; i++) {
+                            locks.add(users.get(row.neighbors[i]), write);
+                        }
+                    } else {
+                        for (MyIntHashSet.IntIterator it = user.following.iterator(); it.hasNext(); ) {
+                            locks.add(users.get(it.next()), write);
+                        }
+                    }
+                } finally {
+                    user.lock.tryUnlockRead();
+                }
+                locks.lockAll();
+                if (user.followingVersion == version) {
+                    break;
+                }
+                locks.unlockAll();
+            }
+            try {
+                return operation.get();
+            } finally {
+                Snapshots.commit();
+                locks.unlockAll();
+            }
+        } finally {
+            networkLock.tryUnlockRead();
+            WriteAheadLog.commit();
+        }
+    }
+}
@@ -1,15 +1,38 @@
 import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
 
 public class User {
+    int index; // interned ID of the user
     String userId;
 
-    // Stores the followers, the following, seen posts and posts of the user
-    MyHashSet<String> followers = new MyHashSet<>();
-    MyHashSet<String> following = new MyHashSet<>();
-    MyHashSet<String> seenPosts = new MyHashSet<>();
+    // Stores the followers, the following, seen posts and posts of the user,
+    // the users and posts in the sets are referred to by their interned IDs,
+    // and the seen posts are kept in a compressed bitmap since heavy scrollers see a lot of them,
+    // behind a Bloom filter since most posts checked against them are not seen
+    MyIntHashSet followers = new MyIntHashSet();
+    MyIntHashSet following = new MyIntHashSet();
+    SeenPosts seenPosts = new SeenPosts();
     ArrayList<Post> posts = new ArrayList<>();
+    // The posts of the user ordered by likes, kept up to date by createPost and toggleLike,
+    // read by the feeds and by sortPosts from snapshots that do not lock the user
+    RankedPosts rankedPosts = new RankedPosts();
+    // The unseen posts of the followed users ordered by likes, only used in push feed mode
+    MyTreeSet<Post> feed = new MyTreeSet<>();
+    // In hybrid feed mode, whether the posts of the user are pulled by its followers instead of pushed to them,
+    // and the followed users whose posts are pulled
+    boolean celebrity = false;
+    MyIntHashSet followedCelebrities = new MyIntHashSet();
+    // How far the user has scrolled through the posts of each followed user
+    FeedCursor feedCursor = new FeedCursor();
+    // The first posts of the feed computed by generate_feed_all, returned by feed reads while they are current
+    CachedFeed cachedFeed;
+    // Guards the state of the user and of its posts when commands run on several threads, see UserLocks,
+    // and the count of changes to the followed users, so a feed can check that it locked all of them
+    final StampedLock lock = new StampedLock();
+    int followingVersion = 0;
 
-    User(String userId) {
+    User(int index, String userId) {
+        this.index = index;
         this.userId = userId;
     }
 }
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * The locks of the users a command reads or writes, taken together.
+ *
+ * Every user has a read-write lock, a {@link java.util.concurrent.locks.StampedLock} since no command takes the
+ * same lock twice, which does not count the holds of each thread like a reentrant lock does. The locks of a
+ * command are collected first and then taken in the order of the user IDs, so two commands that share users always
+ * take their common locks in the same order and can not wait for each other forever. A user that is both read and
+ * written is locked once for writing.
+ */
+public class UserLocks {
+    private final MySymbolTable<User> users;
+    // the interned ID of every user shifted left by one, with the lowest bit set if the user is written
+    private long[] keys = new long[8];
+    private int size = 0;
+    private int locked = 0; // the number of keys whose locks are held, after sorting
+    private boolean complete = true;
+
+    /**
+     * Creates an empty set of locks.
+     *
+     * @param users A symbol table containing all users in the network.
+     */
+    public UserLocks(MySymbolTable<User> users) {
+        this.users = users;
+    }
+
+    // Adds the lock of a user, a null user is not locked but makes the set incomplete
+    public void add(User user, boolean write) {
+        if (user == null) {
+            complete = false;
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = ((long) user.index << 1) | (write ? 1 : 0);
+    }
+
+    // Checks if every added user existed, a user that did not may be created by another thread before it is used
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // Takes all the added locks in the order of the user IDs
+    public void lockAll() {
+        Arrays.sort(keys, 0, size);
+        // after sorting, the write key of a user comes right after its read key, so only the last one is kept
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique > 0 && keys[unique - 1] >>> 1 == keys[i] >>> 1) {
+                keys[unique - 1] = keys[i];
+            } else {
+                keys[unique++] = keys[i];
+            }
+        }
+        size = unique;
+        for (locked = 0; locked < size; locked++) {
+            User user = users.get((int) (keys[locked] >>> 1));
+            if ((keys[locked] & 1) != 0) {
+                user.lock.writeLock();
+            } else {
+                user.lock.readLock();
+            }
+        }
+    }
+
+    // Releases the locks that are held and empties the set
+    public void unlockAll() {
+        for (int i = locked - 1; i >= 0; i--) {
+            User user = users.get((int) (keys[i] >>> 1));
+            if ((keys[i] & 1) != 0) {
+                user.lock.tryUnlockWrite();
+            } else {
+                user.lock.tryUnlockRead();
+            }
+        }
+        locked = 0;
+        size = 0;
+    }
+}
@@ -5,83 +5,89 @@ public class UserOperations {
      * Creates a new user in the network.
      *
      * @param userId The ID of the user to be created.
-     * @param users A hashmap containing all users in the network.
-     *
-     * If the user is created successfully, it is added to the `users` hashmap, and a success message is logged.
+     * @param users A symbol table containing all users in the network.
+     * @return true if the user is created, false if a user with the same ID already exists.
      */
-    public static void createUser(String userId, MyHashMap<String, User> users) {
-        // if the user already exists in the network, log an error
-        if (users.containsKey(userId)) {
-            InputOutputOperations.logError("create_user");
-        } else {
-            users.put(userId, new User(userId));
-            InputOutputOperations.log("Created user with Id " + userId + ".");
+    public static boolean createUser(String userId, MySymbolTable<User> users) {
+        // the ID is checked and given under the lock of the table, so two threads can not create the same user
+        synchronized (users) {
+            // if the user already exists in the network, it can not be created
+            if (users.containsKey(userId)) {
+                return false;
+            }
+            users.put(userId, new User(users.nextId(), userId));
+            // logged under the lock of the table, so replaying the log gives out the same interned IDs
+            WriteAheadLog.logCreateUser(userId);
         }
+        return true;
     }
     /**
      * Allows one user to follow another user.
      *
-     * @param params A string containing the follower's user ID and the followed user's user ID, separated by a space.
-     * @param users A hashmap containing all users in the network.
+     * @param followerId The ID of the user who follows.
+     * @param followedId The ID of the user to be followed.
+     * @param users A symbol table containing all users in the network.
+     * @return true if the user is followed, false if one of the users does not exist or the follow is not allowed.
      *
-     * Updates the follower's and followed user's lists and logs a success message.
+     * Updates the follower's and followed user's lists.
      */
-    public static void followUser(String params, MyHashMap<String, User> users) {
-        String[] userIds = params.split(" ");
-        // if one of the users do not exist in the network, log an error
-        if (!users.containsKey(userIds[0]) || !users.containsKey(userIds[1])) {
-            InputOutputOperations.logError("follow_user");
-            return;
+    public static boolean followUser(String followerId, String followedId, MySymbolTable<User> users) {
+        // if one of the users do not exist in the network, it is an error
+        if (!users.containsKey(followerId) || !users.containsKey(followedId)) {
+            return false;
         }
-        // a user cannot follow himself/herself, so log an error
-        if (userIds[0].equals(userIds[1])) {
-            InputOutputOperations.logError("follow_user");
-            return;
+        // a user cannot follow himself/herself
+        if (followerId.equals(followedId)) {
+            return false;
         }
-        User follower = users.get(userIds[0]);
-        User followedUser = users.get(userIds[1]);
-        boolean isAlreadyFollowing = follower.following.contains(userIds[1]);
+        User follower = users.get(followerId);
+        User followedUser = users.get(followedId);
+        boolean isAlreadyFollowing = follower.following.contains(followedUser.index);
 
-        // if the follower is already following the user2, it couldn't be added, log an error
-        if (!isAlreadyFollowing){
-            follower.following.add(userIds[1]);
-            followedUser.followers.add(userIds[0]);
-            InputOutputOperations.log(userIds[0] + " followed " + userIds[1] + ".");
-        } else {
-            InputOutputOperations.logError("follow_user");
+        // if the follower is already following the user2, it couldn't be added
+        if (isAlreadyFollowing) {
+            return false;
         }
+        follower.following.add(followedUser.index);
+        follower.followingVersion++;
+        followedUser.followers.add(follower.index);
+        FeedStore.onFollow(follower, followedUser, users);
+        WriteAheadLog.logFollow(follower, followedUser);
+        return true;
     }
     /**
      * Allows one user to unfollow another user.
      *
-     * @param params A string containing the follower's user ID and the unfollowed user's user ID, separated by a space.
-     * @param users A hashmap containing all users in the network.
+     * @param followerId The ID of the user who unfollows.
+     * @param unfollowedId The ID of the user to be unfollowed.
+     * @param users A symbol table containing all users in the network.
+     * @return true if the user is unfollowed, false if one of the users does not exist or the user was not followed.
      *
-     * Updates the follower's and unfollowed user's lists and logs a success message.
+     * Updates the follower's and unfollowed user's lists.
      */
-    public static void unfollowUser(String params, MyHashMap<String, User> users) {
-        String[] userIds = params.split(" ");
-        // if one of the users do not exist in the network, log an error
-        if (!users.containsKey(userIds[0]) || !users.containsKey(userIds[1])) {
-            InputOutputOperations.logError("unfollow_user");
-            return;
+    public static boolean unfollowUser(String followerId, String unfollowedId, MySymbolTable<User> users) {
+        // if one of the users do not exist in the network, it is an error
+        if (!users.containsKey(followerId) || !users.containsKey(unfollowedId)) {
+            return false;
         }
-        // a user cannot unfollow himself/herself, so log an error
-        if (userIds[0].equals(userIds[1])) {
-            InputOutputOperations.logError("unfollow_user");
-            return;
+        // a user cannot unfollow himself/herself
+        if (followerId.equals(unfollowedId)) {
+            return false;
         }
-        User follower = users.get(userIds[0]);
-        User unfollowedUser = users.get(userIds[1]);
-        boolean isAlreadyFollowing = follower.following.contains(userIds[1]);
+        User follower = users.get(followerId);
+        User unfollowedUser = users.get(unfollowedId);
+        boolean isAlreadyFollowing = follower.following.contains(unfollowedUser.index);
         // if and only if a follower is following the user2, he/she can unfollow that user
-        if (isAlreadyFollowing) {
-            follower.following.remove(userIds[1]);
-            unfollowedUser.followers.remove(userIds[0]);
-            InputOutputOperations.log(userIds[0] + " unfollowed " + userIds[1] + ".");
-        } else {
-            InputOutputOperations.logError("unfollow_user");
+        if (!isAlreadyFollowing) {
+            return false;
         }
+        follower.following.remove(unfollowedUser.index);
+        follower.followingVersion++;
+        unfollowedUser.followers.remove(follower.index);
+        follower.feedCursor.discard(unfollowedUser);
+        FeedStore.onUnfollow(follower, unfollowedUser, users);
+        WriteAheadLog.logUnfollow(follower, unfollowedUser);
+        return true;
     }
 
 }
@@ -0,0 +1,554 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of the changes to the network, so the state survives a crash. Enabled with {@code --wal=<path>}.
+ *
+ * Every successful change appends a small binary record while the command still holds its locks, so the records of
+ * commands that use the same users are in the order the commands ran: creating a user or a post, following,
+ * unfollowing, liking, and seeing posts, also while scrolling. Users and posts are referred to by their interned IDs,
+ * which replaying the log gives out again in the same order.
+ *
+ * Appending only copies the record into a buffer. A sync thread writes the buffered records as one frame and forces
+ * them to the disk, so the cost of a sync is shared by all the changes since the last one (group commit).
+ * The durability window, {@code --wal-window=<ms>}, bounds how long a change may wait for the next sync.
+ * With a window of 0 every command waits until its records are on the disk before it returns, and the commands
+ * that finish while a sync runs are forced together by the next one.
+ *
+ * A frame is its payload length, the CRC-32C of its payload and the records. Recovery replays the frames in order
+ * and stops at the first frame that is cut short or does not match its checksum, which is the part a crash may have
+ * left half written, and the log is truncated there.
+ *
+ * Saving a snapshot starts a new log holding only a record of the snapshot path, so recovery loads the latest
+ * snapshot and replays only the changes made after it. The record also holds the generation number of the snapshot:
+ * if a snapshot is saved over the one the log starts from, and a crash comes before the new log replaces the old
+ * one, recovery finds a different generation and fails instead of replaying the older changes onto the newer
+ * snapshot. If starting the new log fails, nothing more is logged. The log belongs to the one network of the process.
+ */
+public class WriteAheadLog {
+    private static final int MAGIC = 0x534D574C; // "SMWL"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int FLUSH_SIZE = 1 << 20; // the buffered bytes that start a sync before the window ends
+
+    // the record types
+    private static final byte CREATE_USER = 1;
+    private static final byte FOLLOW = 2;
+    private static final byte UNFOLLOW = 3;
+    private static final byte CREATE_POST = 4;
+    private static final byte TOGGLE_LIKE = 5;
+    private static final byte SEE_POST = 6;
+    private static final byte SEE_ALL_POSTS = 7;
+    private static final byte SNAPSHOT = 8;
+
+    private static volatile boolean enabled = false;
+    private static FileChannel channel;
+    private static Path path;
+    private static long windowMillis;
+    private static Thread syncThread;
+
+    // guards the buffer and the counters below, and is waited on by the sync thread and by committing commands
+    private static final Object lock = new Object();
+    private static byte[] buffer = new byte[1 << 16];
+    private static byte[] spare = new byte[1 << 16]; // the buffer being written by the sync thread
+    private static int position = 0;
+    private static long appended = 0; // the bytes of records appended since the log was opened
+    private static long durable = 0; // the appended bytes that are on the disk
+    private static long requested = 0; // the appended bytes that committing commands wait for
+    private static long bufferStart; // the time the oldest buffered record was appended, in milliseconds
+    private static boolean closing = false;
+    private static IOException failure;
+    private static long records = 0;
+    private static long syncs = 0;
+
+    // guards the channel, so a new log is not started while a frame is written
+    private static final Object fileLock = new Object();
+
+    // the end of the records appended by the command running on this thread
+    private static final ThreadLocal<long[]> threadEnd = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Recovers the state of the log into an empty network, and then opens the log for new changes.
+     *
+     * @param logPath The path of the log, which is created if it does not exist.
+     * @param snapshotPath The snapshot to start a new log from, or null. It must be null if the log already has
+     *                     changes that were not made on top of a snapshot.
+     * @param window The durability window in milliseconds.
+     * @param users The symbol table of the users, which must be empty.
+     * @param posts The symbol table of the posts, which must be empty.
+     * @param order The order of all post IDs.
+     * @param contents The arena that keeps the contents of the posts.
+     * @throws IOException If the log or the snapshot can not be read, or the log can not be opened.
+     */
+    static void open(Path logPath, String snapshotPath, long window, MySymbolTable<User> users,
+                     MySymbolTable<Post> posts, PostOrder order, MyByteArena contents) throws IOException {
+        FileChannel file = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = file.size() == 0 ? 0 : replay(file, logPath, snapshotPath, users, posts, order, contents);
+            if (end <= HEADER_SIZE) {
+                // a log without changes, which starts again from the given snapshot
+                file.truncate(0);
+                file.position(0);
+                long generation = 0;
+                if (snapshotPath != null) {
+                    generation = SnapshotOperations.loadSnapshot(Path.of(snapshotPath), users, posts, order, contents);
+                }
+                writeStart(file, snapshotPath, generation);
+            } else {
+                // a frame that a crash left half written is cut off, so new frames follow the last whole one
+                file.truncate(end);
+                file.position(end);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        channel = file;
+        path = logPath;
+        windowMillis = window;
+        enabled = true;
+        syncThread = new Thread(WriteAheadLog::syncLoop, "wal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    // Records the changes of the commands, each is called by the command while it holds the locks it uses
+
+    static void logCreateUser(String userId) {
+        if (enabled) {
+            append(CREATE_USER, -1, -1, userId.getBytes(StandardCharsets.UTF_8), null);
+        }
+    }
+
+    static void logFollow(User follower, User followed) {
+        if (enabled) {
+            append(FOLLOW, follower.index, followed.index, null, null);
+        }
+    }
+
+    static void logUnfollow(User follower, User unfollowed) {
+        if (enabled) {
+            append(UNFOLLOW, follower.index, unfollowed.index, null, null);
+        }
+    }
+
+    static void logCreatePost(User author, Post post) {
+        if (enabled) {
+            append(CREATE_POST, author.index, -1, post.postId.getBytes(StandardCharsets.UTF_8), post.contentBytes());
+        }
+    }
+
+    static void logToggleLike(User user, Post post) {
+        if (enabled) {
+            append(TOGGLE_LIKE, user.index, post.index, null, null);
+        }
+    }
+
+    static void logSeePost(User user, Post post) {
+        if (enabled) {
+            append(SEE_POST, user.index, post.index, null, null);
+        }
+    }
+
+    static void logSeeAllPosts(User viewer, User viewed) {
+        if (enabled) {
+            append(SEE_ALL_POSTS, viewer.index, viewed.index, null, null);
+        }
+    }
+
+    /**
+     * Waits until the records of the command that ran on this thread are on the disk, if the durability window is 0.
+     * Must be called after the command released its locks, so other commands run while it waits.
+     *
+     * @throws UncheckedIOException If the log can not be written.
+     */
+    public static void commit() {
+        if (!enabled) {
+            return;
+        }
+        long[] end = threadEnd.get();
+        if (end[0] == 0) {
+            return;
+        }
+        long target = end[0];
+        end[0] = 0;
+        if (windowMillis > 0) {
+            return;
+        }
+        synchronized (lock) {
+            if (requested < target) {
+                requested = target;
+                lock.notifyAll();
+            }
+            try {
+                while (durable < target && failure == null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+        }
+    }
+
+    /**
+     * Starts a new log from a snapshot that holds every change logged so far. Must be called while no other command
+     * runs, after the snapshot is on the disk.
+     *
+     * @param snapshotPath The path of the snapshot.
+     * @param generation The generation number of the snapshot.
+     * @throws IOException If the new log can not be written. Then nothing more is logged, since the old log may
+     *                     start from a snapshot that was replaced, and the commands that change the network fail.
+     */
+    static void checkpoint(Path snapshotPath, long generation) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (fileLock) {
+            try {
+                Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+                FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    writeStart(file, snapshotPath.toAbsolutePath().toString(), generation);
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | RuntimeException e) {
+                    file.close();
+                    throw e;
+                }
+                FileChannel old = channel;
+                channel = file;
+                old.close();
+            } catch (IOException | RuntimeException e) {
+                synchronized (lock) {
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    lock.notifyAll();
+                }
+                throw e;
+            }
+            synchronized (lock) {
+                // the buffered records are in the snapshot
+                position = 0;
+                durable = appended;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Writes the remaining records to the disk and closes the log
+    public static void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        enabled = false;
+        synchronized (fileLock) {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Writes the record counts and how many records every sync wrote
+    public static void report(PrintStream out) {
+        if (syncs == 0) {
+            return;
+        }
+        out.println(String.format("write-ahead log: %d records, %d syncs (%.1f records per sync)",
+                records, syncs, (double) records / syncs));
+    }
+
+    // Encodes a record into the buffer, the IDs and strings that a type does not have are -1 and null
+    private static void append(byte type, int first, int second, byte[] textBytes, byte[] moreBytes) {
+        int maxSize = 1 + 10 + (textBytes == null ? 0 : 5 + textBytes.length) + (moreBytes == null ? 0 : 5 + moreBytes.length);
+        synchronized (lock) {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+            if (position + maxSize > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + maxSize)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+            int start = position;
+            if (start == 0) {
+                // the window of the buffered records starts, the sync thread waits for its end
+                bufferStart = System.currentTimeMillis();
+                lock.notifyAll();
+            }
+            buffer[position++] = type;
+            if (first >= 0) {
+                putVarint(first);
+            }
+            if (second >= 0) {
+                putVarint(second);
+            }
+            if (textBytes != null) {
+                putBytes(textBytes);
+            }
+            if (moreBytes != null) {
+                putBytes(moreBytes);
+            }
+            appended += position - start;
+            records++;
+            threadEnd.get()[0] = appended;
+            if (position >= FLUSH_SIZE && start < FLUSH_SIZE) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private static void putBytes(byte[] bytes) {
+        putVarint(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // The sync thread: writes the buffered records as one frame when a command waits for them, when the window of the
+    // oldest one ends, or when the buffer is large, until the log is closed
+    private static void syncLoop() {
+        while (true) {
+            byte[] frame;
+            int length;
+            long target;
+            synchronized (lock) {
+                try {
+                    while (true) {
+                        if (position == 0) {
+                            if (closing) {
+                                return;
+                            }
+                            lock.wait();
+                            continue;
+                        }
+                        long remaining = windowMillis == 0 ? 0 : bufferStart + windowMillis - System.currentTimeMillis();
+                        if (closing || requested > durable || position >= FLUSH_SIZE || (windowMillis > 0 && remaining <= 0)) {
+                            break;
+                        }
+                        // with a window of 0 the records wait for a command to commit them
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    closing = true;
+                    if (position == 0) {
+                        return;
+                    }
+                }
+                frame = buffer;
+                length = position;
+                target = appended;
+                buffer = spare;
+                spare = frame;
+                position = 0;
+            }
+            try {
+                synchronized (fileLock) {
+                    if (durable < target) {
+                        writeFrame(channel, frame, length);
+                        channel.force(false);
+                    }
+                }
+                synchronized (lock) {
+                    durable = Math.max(durable, target);
+                    syncs++;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private static void writeFrame(FileChannel file, byte[] payload, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, length);
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE).putInt(length).putInt((int) crc.getValue()).flip();
+        ByteBuffer body = ByteBuffer.wrap(payload, 0, length);
+        while (header.hasRemaining() || body.hasRemaining()) {
+            file.write(new ByteBuffer[] {header, body});
+        }
+    }
+
+    // Writes the header of a new log, and the record of the snapshot it starts from
+    private static void writeStart(FileChannel file, String snapshotPath, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) {
+            file.write(header);
+        }
+        if (snapshotPath != null) {
+            byte[] pathBytes = Path.of(snapshotPath).toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(1 + 5 + pathBytes.length + 8);
+            record.put(SNAPSHOT);
+            writeVarint(record, pathBytes.length);
+            record.put(pathBytes);
+            record.putLong(generation);
+            writeFrame(file, record.array(), record.position());
+        }
+        file.force(true);
+    }
+
+    private static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    // Replays the whole frames of a log and returns the offset after the last one
+    private static long replay(FileChannel file, Path logPath, String snapshotPath, MySymbolTable<User> users,
+                               MySymbolTable<Post> posts, PostOrder order, MyByteArena contents) throws IOException {
+        ByteBuffer log = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        if (log.remaining() < HEADER_SIZE || log.getInt() != MAGIC || log.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a write-ahead log: " + logPath);
+        }
+        boolean first = true;
+        CRC32C crc = new CRC32C();
+        while (log.remaining() >= FRAME_HEADER_SIZE) {
+            int frameStart = log.position();
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length < 0 || length > log.remaining()) {
+                return frameStart;
+            }
+            ByteBuffer payload = log.slice(log.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return frameStart;
+            }
+            log.position(log.position() + length);
+            while (payload.hasRemaining()) {
+                byte type = payload.get();
+                if (first && type != SNAPSHOT && snapshotPath != null) {
+                    throw new IOException("The write-ahead log " + logPath + " was not started from a snapshot");
+                }
+                first = false;
+                replayRecord(type, payload, users, posts, order, contents);
+            }
+        }
+        return log.position();
+    }
+
+    private static void replayRecord(byte type, ByteBuffer payload, MySymbolTable<User> users, MySymbolTable<Post> posts,
+                                     PostOrder order, MyByteArena contents) throws IOException {
+        switch (type) {
+            case CREATE_USER:
+                UserOperations.createUser(readString(payload), users);
+                break;
+            case FOLLOW: {
+                User follower = readUser(payload, users);
+                UserOperations.followUser(follower.userId, readUser(payload, users).userId, users);
+                break;
+            }
+            case UNFOLLOW: {
+                User follower = readUser(payload, users);
+                UserOperations.unfollowUser(follower.userId, readUser(payload, users).userId, users);
+                break;
+            }
+            case CREATE_POST: {
+                User author = readUser(payload, users);
+                String postId = readString(payload);
+                PostOperations.createPost(author.userId, postId, readString(payload), users, posts, order, contents);
+                break;
+            }
+            case TOGGLE_LIKE:
+                PostOperations.toggleLike(readUser(payload, users), readPost(payload, posts), users);
+                break;
+            case SEE_POST:
+                FeedStore.markSeen(readUser(payload, users), readPost(payload, posts));
+                break;
+            case SEE_ALL_POSTS: {
+                User viewer = readUser(payload, users);
+                PostOperations.seeAllPostsFromUser(viewer.userId, readUser(payload, users).userId, users);
+                break;
+            }
+            case SNAPSHOT: {
+                if (users.size() > 0 || posts.size() > 0) {
+                    throw new IOException("A snapshot record after changes in the write-ahead log");
+                }
+                Path snapshot = Path.of(readString(payload));
+                long generation = payload.getLong();
+                if (SnapshotOperations.loadSnapshot(snapshot, users, posts, order, contents) != generation) {
+                    throw new IOException("The snapshot " + snapshot + " was replaced after the write-ahead log started from it");
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type + " in the write-ahead log");
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in the write-ahead log");
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static User readUser(ByteBuffer in, MySymbolTable<User> users) throws IOException {
+        int index = readVarint(in);
+        User user = users.get(index);
+        if (user == null) {
+            throw new IOException("Unknown user " + index + " in the write-ahead log");
+        }
+        return user;
+    }
+
+    private static Post readPost(ByteBuffer in, MySymbolTable<Post> posts) throws IOException {
+        int index = readVarint(in);
+        Post post = posts.get(index);
+        if (post == null) {
+            throw new IOException("Unknown post " + index + " in the write-ahead log");
+        }
+        return post;
+    }
+}
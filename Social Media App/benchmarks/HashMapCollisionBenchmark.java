@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the lookup latency of {@link MyHashMap} with ordinary IDs and with adversarial IDs
+ * that all have the same {@code String.hashCode()}.
+ *
+ * Adversarial IDs are built from the blocks "Aa" and "BB", which have the same hash code, so every
+ * string made of n such blocks collides with the other 2^n strings. Without tree bins every lookup
+ * among them would walk a single chain, and the time per lookup would grow linearly with the key count.
+ *
+ * Run from the project directory:
+ *   javac -d out *.java benchmarks/*.java
+ *   java -cp out HashMapCollisionBenchmark
+ */
+public class HashMapCollisionBenchmark {
+    private static final int LOOKUPS = 2_000_000;
+
+    public static void main(String[] args) {
+        System.out.println("keys      ordinary ns/get   colliding ns/get");
+        for (int blocks = 8; blocks <= 16; blocks += 2) {
+            int count = 1 << blocks;
+            ArrayList<String> ordinary = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ordinary.add("user" + i);
+            }
+            ArrayList<String> colliding = collidingKeys(blocks);
+            // run each measurement twice and keep the second, so the JIT has compiled the lookup path
+            measure(ordinary);
+            measure(colliding);
+            System.out.printf("%-9d %-17.1f %.1f%n", count, measure(ordinary), measure(colliding));
+        }
+    }
+
+    // Returns all 2^blocks strings made of "Aa" and "BB" blocks, which share one hash code
+    private static ArrayList<String> collidingKeys(int blocks) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (int bits = 0; bits < (1 << blocks); bits++) {
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < blocks; i++) {
+                key.append((bits >> i & 1) == 0 ? "Aa" : "BB");
+            }
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    // Builds a map with the keys and returns the average time of a random successful lookup in nanoseconds
+    private static double measure(ArrayList<String> keys) {
+        MyHashMap<String, Integer> map = new MyHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i);
+        }
+        String[] probes = new String[LOOKUPS];
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = keys.get(random.nextInt(keys.size()));
+        }
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (String probe : probes) {
+            checksum += map.get(probe);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum < 0) {
+            System.out.println(checksum); // keeps the lookups from being optimized away
+        }
+        return (double) elapsed / LOOKUPS;
+    }
+}